@@ -0,0 +1,90 @@
+package com.wangrui027.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试使用的文档，结构与测试中的 Person 一致
+ */
+public class BenchPerson {
+
+    private String id;
+    private String name;
+    private Integer age;
+    private String city;
+    private String description;
+    private Map<String, Object> extendsInfo;
+
+    public static BenchPerson of(int i) {
+        BenchPerson person = new BenchPerson();
+        person.id = String.valueOf(i);
+        person.name = "张三" + i;
+        person.age = i % 100;
+        person.city = "武汉";
+        person.description = "张三是一个java程序员，不会vue，编号 " + i;
+        Map<String, Object> extendsInfo = new HashMap<>();
+        extendsInfo.put("电话", 18702764000L + i);
+        extendsInfo.put("手机型号", "redmi k30s");
+        person.extendsInfo = extendsInfo;
+        return person;
+    }
+
+    public static List<BenchPerson> list(int size) {
+        List<BenchPerson> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(of(i));
+        }
+        return list;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Integer getAge() {
+        return age;
+    }
+
+    public void setAge(Integer age) {
+        this.age = age;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public Map<String, Object> getExtendsInfo() {
+        return extendsInfo;
+    }
+
+    public void setExtendsInfo(Map<String, Object> extendsInfo) {
+        this.extendsInfo = extendsInfo;
+    }
+
+}
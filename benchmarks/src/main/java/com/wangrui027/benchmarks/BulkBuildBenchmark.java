@@ -0,0 +1,108 @@
+package com.wangrui027.benchmarks;
+
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.json.JsonpMapper;
+import com.wangrui027.utils.JsonpMappers;
+import jakarta.json.stream.JsonGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * save(String, List, List) 发出请求前的开销：构造 BulkOperation 以及把文档序列化为 bulk body
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkBuildBenchmark {
+
+    private static final String INDICES_NAME = "bench";
+
+    @Param({"100", "1000"})
+    private int size;
+
+    private List<BenchPerson> list;
+
+    private List<String> ids;
+
+    private JsonpMapper mapper;
+
+    @Setup
+    public void setup() {
+        list = BenchPerson.list(size);
+        ids = new ArrayList<>(size);
+        for (BenchPerson person : list) {
+            ids.add(person.getId());
+        }
+        mapper = JsonpMappers.defaultMapper();
+    }
+
+    @Benchmark
+    public List<BulkOperation> buildOperations() {
+        return operations();
+    }
+
+    @Benchmark
+    public void buildAndSerialize(Blackhole blackhole) {
+        NullOutputStream out = new NullOutputStream();
+        for (BulkOperation operation : operations()) {
+            try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+                operation.serialize(generator, mapper);
+            }
+            try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+                mapper.serialize(operation.index().document(), generator);
+            }
+        }
+        blackhole.consume(out.count);
+    }
+
+    /**
+     * 与 ESUtil 中构造 index 操作的方式一致
+     */
+    private List<BulkOperation> operations() {
+        List<BulkOperation> operations = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            int finalI = i;
+            operations.add(BulkOperation.of(bo -> bo.index(e -> e
+                    .index(INDICES_NAME)
+                    .id(ids.get(finalI))
+                    .document(list.get(finalI))
+            )));
+        }
+        return operations;
+    }
+
+    static class NullOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.wangrui027.benchmarks;
+
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import com.wangrui027.utils.ESUtil;
+import com.wangrui027.utils.JsonpMappers;
+import com.wangrui027.utils.RawSearchResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过 ESUtil 调用本地替身 ES 服务，测量包含 HTTP 往返在内的客户端端到端开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final String INDICES_NAME = "bench";
+
+    @Param({"100"})
+    private int size;
+
+    private StubEsServer server;
+
+    private ESUtil esUtil;
+
+    private BenchPerson person;
+
+    private List<BenchPerson> list;
+
+    private List<String> ids;
+
+    private List<String> rawList;
+
+    private SearchRequest searchRequest;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new StubEsServer(INDICES_NAME, size);
+        esUtil = ESUtil.of(e -> e
+                .ip("127.0.0.1")
+                .port(server.port())
+                .indicesName(INDICES_NAME)
+                .shareTransport(false)
+        );
+        person = BenchPerson.of(1);
+        list = BenchPerson.list(size);
+        ids = new ArrayList<>(size);
+        rawList = new ArrayList<>(size);
+        for (BenchPerson p : list) {
+            ids.add(p.getId());
+            rawList.add(JsonpMappers.objectMapper().writeValueAsString(p));
+        }
+        searchRequest = SearchRequest.of(s -> s.index(INDICES_NAME).size(size));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        esUtil.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String save() throws IOException {
+        return esUtil.save(INDICES_NAME, person, person.getId());
+    }
+
+    @Benchmark
+    public BenchPerson getById() throws IOException {
+        return esUtil.getById(INDICES_NAME, "1", BenchPerson.class);
+    }
+
+    @Benchmark
+    public BulkResponse saveList() throws IOException {
+        return esUtil.save(INDICES_NAME, list, ids);
+    }
+
+    @Benchmark
+    public BulkResponse saveRawList() throws IOException {
+        return esUtil.saveRaw(INDICES_NAME, rawList, ids);
+    }
+
+    @Benchmark
+    public List<BenchPerson> search() throws IOException {
+        return esUtil.search(searchRequest, BenchPerson.class);
+    }
+
+    @Benchmark
+    public RawSearchResponse searchRaw() throws IOException {
+        return esUtil.searchRaw(searchRequest);
+    }
+
+    @Benchmark
+    public List<BenchPerson> searchProjection() throws IOException {
+        return esUtil.searchProjection(searchRequest, BenchPerson.class);
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.wangrui027.benchmarks;
+
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.wangrui027.utils.JsonpMappers;
+import jakarta.json.stream.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检索响应反序列化，不经过网络，直接解析预先生成的 _search 响应
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitDeserializationBenchmark {
+
+    @Param({"10", "1000"})
+    private int hits;
+
+    @Param({"shared", "plain"})
+    private String mapperType;
+
+    private JsonpMapper mapper;
+
+    private JsonpDeserializer<SearchResponse<BenchPerson>> deserializer;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        mapper = "shared".equals(mapperType) ? JsonpMappers.defaultMapper() : new JacksonJsonpMapper();
+        deserializer = SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(BenchPerson.class));
+        body = StubEsServer.searchResponseBody("bench", hits);
+    }
+
+    @Benchmark
+    public SearchResponse<BenchPerson> typed() {
+        try (JsonParser parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(body))) {
+            return deserializer.deserialize(parser, mapper);
+        }
+    }
+
+}
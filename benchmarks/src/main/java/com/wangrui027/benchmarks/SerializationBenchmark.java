@@ -0,0 +1,72 @@
+package com.wangrui027.benchmarks;
+
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.wangrui027.utils.JsonpMappers;
+import jakarta.json.stream.JsonGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文档序列化：共享的调优映射器与每个实例各自创建的默认映射器对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    /**
+     * shared 为 {@link JsonpMappers#defaultMapper()}，plain 为未调优的 JacksonJsonpMapper
+     */
+    @Param({"shared", "plain"})
+    private String mapperType;
+
+    private JsonpMapper mapper;
+
+    private BenchPerson person;
+
+    @Setup
+    public void setup() {
+        mapper = "shared".equals(mapperType) ? JsonpMappers.defaultMapper() : new JacksonJsonpMapper();
+        person = BenchPerson.of(1);
+    }
+
+    @Benchmark
+    public long serialize() {
+        return serialize(mapper, person);
+    }
+
+    /**
+     * 短生命周期的 ESUtil 实例各自创建映射器时，首次序列化需要重新构建类型缓存
+     */
+    @Benchmark
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public long serializeWithNewMapper() {
+        JsonpMapper fresh = "shared".equals(mapperType) ? JsonpMappers.defaultMapper() : new JacksonJsonpMapper();
+        return serialize(fresh, person);
+    }
+
+    private static long serialize(JsonpMapper mapper, Object document) {
+        BulkBuildBenchmark.NullOutputStream out = new BulkBuildBenchmark.NullOutputStream();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+            mapper.serialize(document, generator);
+        }
+        return out.count;
+    }
+
+}
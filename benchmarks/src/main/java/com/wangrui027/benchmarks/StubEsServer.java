@@ -0,0 +1,199 @@
+package com.wangrui027.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 本地替身 ES 服务，对 _bulk、_search、_doc 返回预先生成的响应，用于排除真实集群耗时后测量客户端开销
+ */
+public class StubEsServer implements Closeable {
+
+    private static final byte[] INFO = ("{\"name\":\"stub\",\"cluster_name\":\"stub\",\"cluster_uuid\":\"stub\","
+            + "\"version\":{\"number\":\"7.17.17\",\"build_flavor\":\"default\",\"build_type\":\"tar\",\"build_hash\":\"stub\","
+            + "\"build_date\":\"2024-01-01T00:00:00.000Z\",\"build_snapshot\":false,\"lucene_version\":\"8.11.1\","
+            + "\"minimum_wire_compatibility_version\":\"6.8.0\",\"minimum_index_compatibility_version\":\"6.0.0-beta1\"},"
+            + "\"tagline\":\"You Know, for Search\"}").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NOT_FOUND = "{\"error\":{\"type\":\"stub_exception\",\"reason\":\"not supported\"},\"status\":404}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final String indicesName;
+
+    private final byte[] searchResponse;
+
+    private final byte[] getResponse;
+
+    private final Map<Integer, byte[]> bulkResponses = new ConcurrentHashMap<>();
+
+    /**
+     * @param indicesName 响应中使用的索引名
+     * @param hits        _search 返回的命中数
+     */
+    public StubEsServer(String indicesName, int hits) throws IOException {
+        this.indicesName = indicesName;
+        this.searchResponse = searchResponseBody(indicesName, hits);
+        this.getResponse = getResponse(indicesName);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * @return 监听端口
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = readAll(exchange.getRequestBody());
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.endsWith("/_bulk")) {
+                respond(exchange, 200, bulkResponses.computeIfAbsent(countActions(body), this::bulkResponse));
+            } else if (path.endsWith("/_search")) {
+                respond(exchange, 200, searchResponse);
+            } else if (path.contains("/_doc/")) {
+                respond(exchange, "GET".equals(method) ? 200 : 201, "GET".equals(method) ? getResponse : indexResponse(path));
+            } else if ("/".equals(path)) {
+                respond(exchange, 200, "HEAD".equals(method) ? null : INFO);
+            } else {
+                respond(exchange, 404, NOT_FOUND);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 统计 NDJSON body 中的 action 行数，action 行与文档行交替出现，delete 没有文档行
+     */
+    private static int countActions(byte[] body) {
+        String ndjson = new String(body, StandardCharsets.UTF_8);
+        int count = 0;
+        int start = 0;
+        while (start < ndjson.length()) {
+            int end = ndjson.indexOf('\n', start);
+            if (end < 0) {
+                end = ndjson.length();
+            }
+            String line = ndjson.substring(start, end);
+            if (line.startsWith("{\"index\"") || line.startsWith("{\"create\"") || line.startsWith("{\"update\"")) {
+                count++;
+                end = ndjson.indexOf('\n', end + 1);
+                if (end < 0) {
+                    end = ndjson.length();
+                }
+            } else if (line.startsWith("{\"delete\"")) {
+                count++;
+            }
+            start = end + 1;
+        }
+        return count;
+    }
+
+    private byte[] bulkResponse(int actions) {
+        StringBuilder sb = new StringBuilder(64 + actions * 200);
+        sb.append("{\"took\":1,\"errors\":false,\"items\":[");
+        for (int i = 0; i < actions; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"index\":{\"_index\":\"").append(indicesName).append("\",\"_type\":\"_doc\",\"_id\":\"").append(i)
+                    .append("\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+                    .append("\"_seq_no\":").append(i).append(",\"_primary_term\":1,\"status\":201}}");
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] indexResponse(String path) {
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        return ("{\"_index\":\"" + indicesName + "\",\"_type\":\"_doc\",\"_id\":\"" + id + "\",\"_version\":1,\"result\":\"created\","
+                + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":0,\"_primary_term\":1}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getResponse(String indicesName) {
+        return ("{\"_index\":\"" + indicesName + "\",\"_type\":\"_doc\",\"_id\":\"1\",\"_version\":1,\"_seq_no\":0,"
+                + "\"_primary_term\":1,\"found\":true,\"_source\":" + source(1) + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 生成 _search 响应 body，纯反序列化基准直接使用
+     *
+     * @param indicesName 索引名
+     * @param hits        命中数
+     * @return 响应 body
+     */
+    public static byte[] searchResponseBody(String indicesName, int hits) {
+        StringBuilder sb = new StringBuilder(256 + hits * 300);
+        sb.append("{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},")
+                .append("\"hits\":{\"total\":{\"value\":").append(hits).append(",\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":[");
+        for (int i = 0; i < hits; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"_index\":\"").append(indicesName).append("\",\"_type\":\"_doc\",\"_id\":\"").append(i)
+                    .append("\",\"_score\":1.0,\"_source\":").append(source(i)).append('}');
+        }
+        sb.append("]}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String source(int i) {
+        return "{\"id\":\"" + i + "\",\"name\":\"张三" + i + "\",\"age\":" + (i % 100) + ",\"city\":\"武汉\","
+                + "\"description\":\"张三是一个java程序员，不会vue，编号 " + i + "\","
+                + "\"extendsInfo\":{\"电话\":" + (18702764000L + i) + ",\"手机型号\":\"redmi k30s\"}}";
+    }
+
+}
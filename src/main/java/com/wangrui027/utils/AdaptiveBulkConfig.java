@@ -0,0 +1,61 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * {@link BulkIngester} 自适应批量大小配置，按加性增、乘性减（AIMD）调整单批字节数和并发请求数
+ */
+@Getter
+@Builder(toBuilder = true)
+public class AdaptiveBulkConfig {
+
+    /**
+     * 单批字节数下限
+     */
+    @Builder.Default
+    private long minBytes = 512 * 1024;
+
+    /**
+     * 单批字节数上限
+     */
+    @Builder.Default
+    private long maxBytes = 32L * 1024 * 1024;
+
+    /**
+     * 每次正常返回后单批字节数的增量
+     */
+    @Builder.Default
+    private long stepBytes = 512 * 1024;
+
+    /**
+     * 并发请求数下限
+     */
+    @Builder.Default
+    private int minConcurrentRequests = 1;
+
+    /**
+     * 并发请求数上限，单批字节数达到上限后才增加并发
+     */
+    @Builder.Default
+    private int maxConcurrentRequests = 8;
+
+    /**
+     * ES 返回的 took 超过该值时减小单批字节数，单位毫秒
+     */
+    @Builder.Default
+    private long targetTookMillis = 1000;
+
+    /**
+     * 客户端耗时超过该值时减小单批字节数，单位毫秒
+     */
+    @Builder.Default
+    private long targetLatencyMillis = 3000;
+
+    /**
+     * 减小时乘以的系数
+     */
+    @Builder.Default
+    private double decreaseFactor = 0.5;
+
+}
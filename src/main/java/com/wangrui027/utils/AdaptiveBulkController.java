@@ -0,0 +1,199 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.NoHttpResponseException;
+import org.elasticsearch.client.ResponseException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 自适应批量大小控制器，每个 bulk 请求返回后按结果调整限制：
+ * <ul>
+ *     <li>有条目被拒绝（429），或请求因 429、5xx、超时、连接失败整体失败时，单批字节数和并发数同时乘性减小</li>
+ *     <li>took 或客户端耗时超过目标值时，只减小单批字节数</li>
+ *     <li>其它情况先加性增大单批字节数，达到上限后每次增加一个并发</li>
+ * </ul>
+ * 减小后，减小之前发出的请求返回时不再调整，避免同一次拥塞被重复计算
+ */
+final class AdaptiveBulkController {
+
+    private final AdaptiveBulkConfig config;
+
+    private final ResizableSemaphore permits;
+
+    private final EsMetrics metrics;
+
+    private volatile long maxBytes;
+
+    private int concurrency;
+
+    /**
+     * 每次减小后递增
+     */
+    private long generation;
+
+    AdaptiveBulkController(AdaptiveBulkConfig config, long initialBytes, int initialConcurrency, EsMetrics metrics) {
+        this.config = config;
+        this.maxBytes = clamp(initialBytes, config.getMinBytes(), config.getMaxBytes());
+        this.concurrency = (int) clamp(initialConcurrency, Math.max(1, config.getMinConcurrentRequests()), config.getMaxConcurrentRequests());
+        this.permits = new ResizableSemaphore(concurrency);
+        this.metrics = metrics;
+        publish();
+    }
+
+    /**
+     * @return 当前单批字节数
+     */
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return 当前并发请求数
+     */
+    synchronized int concurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return 并发许可，数量随并发请求数调整
+     */
+    Semaphore permits() {
+        return permits;
+    }
+
+    /**
+     * 请求发出前调用
+     *
+     * @return 当前代数，请求返回时传回
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * 请求返回后调用
+     */
+    synchronized void onResponse(long generation, BulkResponse response, long wallMillis) {
+        if (generation != this.generation) {
+            return;
+        }
+        if (rejected(response)) {
+            decrease(true);
+        } else if (response.took() > config.getTargetTookMillis() || wallMillis > config.getTargetLatencyMillis()) {
+            decrease(false);
+        } else {
+            increase();
+        }
+    }
+
+    /**
+     * 请求整体失败后调用，参数错误等与负载无关的失败不调整
+     */
+    synchronized void onFailure(long generation, Throwable failure) {
+        if (generation != this.generation || !overloaded(failure)) {
+            return;
+        }
+        decrease(true);
+    }
+
+    private void increase() {
+        if (maxBytes < config.getMaxBytes()) {
+            maxBytes = Math.min(config.getMaxBytes(), maxBytes + config.getStepBytes());
+        } else if (concurrency < config.getMaxConcurrentRequests()) {
+            concurrency++;
+            permits.resize(concurrency);
+        } else {
+            return;
+        }
+        publish();
+    }
+
+    private void decrease(boolean concurrencyToo) {
+        generation++;
+        maxBytes = clamp((long) (maxBytes * config.getDecreaseFactor()), config.getMinBytes(), config.getMaxBytes());
+        if (concurrencyToo) {
+            concurrency = (int) clamp((long) (concurrency * config.getDecreaseFactor()),
+                    Math.max(1, config.getMinConcurrentRequests()), config.getMaxConcurrentRequests());
+            permits.resize(concurrency);
+        }
+        publish();
+    }
+
+    private void publish() {
+        if (metrics != null) {
+            metrics.onBulkLimits(maxBytes, concurrency);
+        }
+    }
+
+    private static boolean rejected(BulkResponse response) {
+        if (!response.errors()) {
+            return false;
+        }
+        for (BulkResponseItem item : response.items()) {
+            if (item.status() == 429 || (item.error() != null && "es_rejected_execution_exception".equals(item.error().type()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只有 ES 返回 429、5xx，以及超时、连接失败视为集群过载，序列化错误、参数错误等客户端异常不调整
+     *
+     * @return 请求整体失败是否由集群过载引起
+     */
+    static boolean overloaded(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ElasticsearchException) {
+                return overloaded(((ElasticsearchException) cause).status());
+            }
+            if (cause instanceof ResponseException) {
+                return overloaded(((ResponseException) cause).getResponse().getStatusLine().getStatusCode());
+            }
+            if (cause instanceof InterruptedIOException || cause instanceof SocketException
+                    || cause instanceof NoHttpResponseException || cause instanceof ConnectionClosedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean overloaded(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * 可调整许可总数的信号量，减少时在途请求不受影响，归还后才生效
+     */
+    static final class ResizableSemaphore extends Semaphore {
+
+        private int size;
+
+        ResizableSemaphore(int size) {
+            super(size);
+            this.size = size;
+        }
+
+        synchronized void resize(int newSize) {
+            int delta = newSize - size;
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+            size = newSize;
+        }
+
+    }
+
+}
@@ -0,0 +1,428 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.json.JsonpMapper;
+import jakarta.json.stream.JsonGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量写入器，逐条接收文档，按文档数、字节数和时间间隔分批提交 bulk 请求。
+ * <br/>
+ * 在途 bulk 请求数达到 {@link BulkIngesterConfig#getMaxConcurrentRequests()} 时，add 会阻塞调用方，
+ * 使用完毕后必须调用 {@link #close()}，以提交剩余文档并释放线程。
+ *
+ * @param <T> 文档类型
+ */
+public class BulkIngester<T> implements Closeable {
+
+    /**
+     * 每条 action 行的估算字节数
+     */
+    private static final int ACTION_OVERHEAD = 64;
+
+    /**
+     * 前若干个文档逐个序列化估算字节数
+     */
+    private static final int SAMPLE_WARMUP = 16;
+
+    /**
+     * 之后每隔若干个文档采样一次，其余文档按采样的平均字节数估算，避免每个文档都多序列化一次
+     */
+    private static final int SAMPLE_INTERVAL = 64;
+
+    private static final AtomicInteger INSTANCE_SEQ = new AtomicInteger();
+
+    private final ESUtil util;
+
+    private final String indicesName;
+
+    private final BulkIngesterConfig config;
+
+    private final BulkListener listener;
+
+    private final Object lock = new Object();
+
+    private List<BulkOperation> buffer = new ArrayList<>();
+
+    private long bufferBytes;
+
+    private volatile boolean closed;
+
+    private final Semaphore permits;
+
+    /**
+     * 自适应控制器，未开启时为 null
+     */
+    private final AdaptiveBulkController adaptive;
+
+    /**
+     * 在途 bulk 请求数，取出缓冲区时在 lock 中加一，通过 lock 等待归零
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ExecutorService executor;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong executionSeq = new AtomicLong();
+
+    private final AtomicLong totalDocs = new AtomicLong();
+
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private final AtomicLong totalFailures = new AtomicLong();
+
+    private final AtomicLong totalRequests = new AtomicLong();
+
+    private final AtomicLong addedDocs = new AtomicLong();
+
+    /**
+     * 采样文档的平均字节数，并发更新时允许丢失个别样本
+     */
+    private volatile long averageSize;
+
+    BulkIngester(ESUtil util, String indicesName, BulkIngesterConfig config) {
+        this.util = util;
+        this.indicesName = indicesName;
+        this.config = config;
+        this.listener = config.getListener() != null ? config.getListener() : new BulkListener() {
+        };
+        int concurrency = Math.max(1, config.getMaxConcurrentRequests());
+        if (config.getAdaptive() != null) {
+            this.adaptive = new AdaptiveBulkController(config.getAdaptive(), config.getMaxBytes(), concurrency, util.metrics());
+            this.permits = adaptive.permits();
+            concurrency = Math.max(1, config.getAdaptive().getMaxConcurrentRequests());
+        } else {
+            this.adaptive = null;
+            this.permits = new Semaphore(concurrency);
+        }
+        String prefix = "es-bulk-ingester-" + INSTANCE_SEQ.incrementAndGet();
+        this.executor = Executors.newFixedThreadPool(concurrency, daemonThreadFactory(prefix));
+        if (config.getFlushIntervalMillis() > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(prefix + "-flusher"));
+            this.scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (RuntimeException ignored) {
+                    // 定时任务抛出异常会终止后续调度，失败情况已由 listener 回调
+                }
+            }, config.getFlushIntervalMillis(), config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * 添加文档，ID 由 ES 生成
+     *
+     * @param document 要保存的对象
+     */
+    public void add(T document) {
+        add(document, null);
+    }
+
+    /**
+     * 添加文档
+     *
+     * @param document 要保存的对象
+     * @param id       文档 ID
+     */
+    public void add(T document, String id) {
+        String index;
+        try {
+            index = util.writeIndex(indicesName);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        add(BulkOperation.of(bo -> bo.index(e -> e
+                .index(index)
+                .id(id)
+                .document(document)
+        )), estimateSize(document));
+    }
+
+    /**
+     * 添加任意批量操作
+     *
+     * @param operation 批量操作
+     * @param bytes     估算字节数
+     */
+    public void add(BulkOperation operation, long bytes) {
+        List<BulkOperation> toFlush = null;
+        long toFlushBytes = 0;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("BulkIngester 已关闭");
+            }
+            buffer.add(operation);
+            bufferBytes += bytes + ACTION_OVERHEAD;
+            long maxBytes = adaptive != null ? adaptive.maxBytes() : config.getMaxBytes();
+            if ((config.getMaxActions() > 0 && buffer.size() >= config.getMaxActions())
+                    || (maxBytes > 0 && bufferBytes >= maxBytes)) {
+                toFlushBytes = bufferBytes;
+                toFlush = drain();
+                inFlight.incrementAndGet();
+            }
+        }
+        if (toFlush != null) {
+            dispatch(toFlush, toFlushBytes);
+        }
+    }
+
+    /**
+     * 立即提交缓冲区中的文档，不等待 bulk 请求返回
+     */
+    public void flush() {
+        List<BulkOperation> toFlush;
+        long toFlushBytes;
+        synchronized (lock) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            toFlushBytes = bufferBytes;
+            toFlush = drain();
+            inFlight.incrementAndGet();
+        }
+        dispatch(toFlush, toFlushBytes);
+    }
+
+    /**
+     * 提交剩余文档，等待所有在途 bulk 请求返回后释放线程
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            awaitTermination(scheduler);
+        }
+        flush();
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (inFlight.get() > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * @return 已提交的文档总数
+     */
+    public long getTotalDocs() {
+        return totalDocs.get();
+    }
+
+    /**
+     * @return 已提交的估算字节总数
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * @return 失败的文档总数，包含整体失败的 bulk 请求中的文档
+     */
+    public long getTotalFailures() {
+        return totalFailures.get();
+    }
+
+    /**
+     * @return 已完成的 bulk 请求数
+     */
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    /**
+     * @return 当前的单批字节数上限，开启自适应时随负载变化
+     */
+    public long getCurrentMaxBytes() {
+        return adaptive != null ? adaptive.maxBytes() : config.getMaxBytes();
+    }
+
+    /**
+     * @return 当前的并发请求数上限，开启自适应时随负载变化
+     */
+    public int getCurrentMaxConcurrentRequests() {
+        return adaptive != null ? adaptive.concurrency() : Math.max(1, config.getMaxConcurrentRequests());
+    }
+
+    private static void awaitTermination(ExecutorService service) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (service.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<BulkOperation> drain() {
+        List<BulkOperation> drained = buffer;
+        buffer = new ArrayList<>();
+        bufferBytes = 0;
+        return drained;
+    }
+
+    /**
+     * 提交已取出的缓冲区，调用前需在 lock 中对 inFlight 加一，close 会等待这部分请求完成后再关闭线程池
+     */
+    private void dispatch(List<BulkOperation> operations, long bytes) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            completed();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待 bulk 请求返回时被中断", e);
+        }
+        long executionId = executionSeq.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    execute(executionId, operations, bytes);
+                } finally {
+                    permits.release();
+                    completed();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            completed();
+            throw e;
+        }
+    }
+
+    private void completed() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void execute(long executionId, List<BulkOperation> operations, long bytes) {
+        long generation = adaptive != null ? adaptive.generation() : 0;
+        listener.beforeBulk(executionId, operations.size(), bytes);
+        long start = System.nanoTime();
+        try {
+            BulkResponse response = util.bulk(operations);
+            int failures = 0;
+            if (response.errors()) {
+                for (BulkResponseItem item : response.items()) {
+                    if (item.error() != null) {
+                        failures++;
+                    }
+                }
+            }
+            BulkStats stats = new BulkStats(executionId, operations.size(), bytes, response.took(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failures);
+            record(stats);
+            if (adaptive != null) {
+                adaptive.onResponse(generation, response, stats.getWallMillis());
+            }
+            listener.afterBulk(executionId, stats, response);
+        } catch (Exception e) {
+            BulkStats stats = new BulkStats(executionId, operations.size(), bytes, -1,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), operations.size());
+            record(stats);
+            if (adaptive != null) {
+                adaptive.onFailure(generation, e);
+            }
+            listener.afterBulk(executionId, stats, e);
+        }
+    }
+
+    private void record(BulkStats stats) {
+        totalDocs.addAndGet(stats.getDocs());
+        totalBytes.addAndGet(stats.getBytes());
+        totalFailures.addAndGet(stats.getFailures());
+        totalRequests.incrementAndGet();
+    }
+
+    /**
+     * 估算文档字节数，只序列化预热和采样的文档，其余使用采样平均值
+     */
+    private long estimateSize(T document) {
+        long seq = addedDocs.getAndIncrement();
+        long average = averageSize;
+        if (seq >= SAMPLE_WARMUP && seq % SAMPLE_INTERVAL != 0 && average > 0) {
+            return average;
+        }
+        long size = serializedSize(document);
+        averageSize = average == 0 ? size : (average * 7 + size) / 8;
+        return size;
+    }
+
+    /**
+     * 通过序列化文档计算其字节数
+     */
+    private long serializedSize(T document) {
+        JsonpMapper mapper = util.getJsonpMapper();
+        CountingOutputStream out = new CountingOutputStream();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+            mapper.serialize(document, generator);
+        }
+        return out.count;
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + seq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+    }
+
+}
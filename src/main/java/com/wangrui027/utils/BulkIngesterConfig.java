@@ -0,0 +1,48 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * {@link BulkIngester} 配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class BulkIngesterConfig {
+
+    /**
+     * 缓冲的文档数达到该值时提交，小于等于 0 表示不按文档数提交
+     */
+    @Builder.Default
+    private int maxActions = 1000;
+
+    /**
+     * 缓冲的估算字节数达到该值时提交，小于等于 0 表示不按字节数提交，默认 5MB
+     */
+    @Builder.Default
+    private long maxBytes = 5L * 1024 * 1024;
+
+    /**
+     * 定时提交间隔，单位毫秒，小于等于 0 表示不定时提交
+     */
+    @Builder.Default
+    private long flushIntervalMillis = 1000;
+
+    /**
+     * 同时在途的 bulk 请求数，达到该值时 add 会阻塞直到有请求返回
+     */
+    @Builder.Default
+    private int maxConcurrentRequests = 1;
+
+    /**
+     * 自适应批量大小配置，不为 null 时按返回耗时和拒绝情况在上下限之间动态调整单批字节数和并发请求数，
+     * maxBytes 和 maxConcurrentRequests 作为初始值，maxActions 仍然生效
+     */
+    private AdaptiveBulkConfig adaptive;
+
+    /**
+     * bulk 请求监听器
+     */
+    private BulkListener listener;
+
+}
@@ -0,0 +1,40 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+
+/**
+ * bulk 请求监听器，回调在 bulk 执行线程中调用
+ */
+public interface BulkListener {
+
+    /**
+     * bulk 请求发送前回调
+     *
+     * @param executionId bulk 请求序号
+     * @param docs        本次提交的文档数
+     * @param bytes       本次提交的文档估算字节数
+     */
+    default void beforeBulk(long executionId, int docs, long bytes) {
+    }
+
+    /**
+     * bulk 请求返回后回调，部分文档失败时也会走该回调
+     *
+     * @param executionId bulk 请求序号
+     * @param stats       统计信息
+     * @param response    批量操作返回对象
+     */
+    default void afterBulk(long executionId, BulkStats stats, BulkResponse response) {
+    }
+
+    /**
+     * bulk 请求整体失败时回调
+     *
+     * @param executionId bulk 请求序号
+     * @param stats       统计信息
+     * @param failure     异常
+     */
+    default void afterBulk(long executionId, BulkStats stats, Throwable failure) {
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * {@link BulkLoadScope} 配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class BulkLoadOptions {
+
+    /**
+     * 导入期间的 refresh_interval，-1 表示关闭自动 refresh
+     */
+    @Builder.Default
+    private String refreshInterval = "-1";
+
+    /**
+     * 导入期间的副本数，导入结束后恢复原副本数并由 ES 重新复制
+     */
+    @Builder.Default
+    private int replicas = 0;
+
+    /**
+     * 导入结束后是否 force merge，适合导入后不再修改的索引
+     */
+    @Builder.Default
+    private boolean forceMerge = false;
+
+    /**
+     * force merge 后每个分片的段数
+     */
+    @Builder.Default
+    private int maxNumSegments = 1;
+
+}
@@ -0,0 +1,110 @@
+package com.wangrui027.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量导入模式，打开时关闭索引的自动 refresh 并去掉副本，关闭时恢复原有设置、refresh，并按需 force merge。
+ * <br/>
+ * 导入失败时同样需要关闭以恢复设置，建议使用 try-with-resources
+ * <pre>
+ * try (BulkLoadScope ignored = util.bulkLoad(INDEX_NAME, o -&gt; o.forceMerge(true))) {
+ *     util.save(INDEX_NAME, list, ids);
+ * }
+ * </pre>
+ */
+public class BulkLoadScope implements Closeable {
+
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+
+    private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+    private final ESUtil util;
+
+    private final String indicesName;
+
+    private final BulkLoadOptions options;
+
+    /**
+     * 每个实际索引原有的设置，值为 null 表示原来使用默认值
+     */
+    private final Map<String, Map<String, String>> originals = new LinkedHashMap<>();
+
+    private boolean closed;
+
+    BulkLoadScope(ESUtil util, String indicesName, BulkLoadOptions options) throws IOException {
+        this.util = util;
+        this.indicesName = indicesName;
+        this.options = options;
+        JsonNode root = util.performJson("GET", "/" + indicesName + "/_settings",
+                Collections.singletonMap("flat_settings", "true"), null);
+        Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode settings = field.getValue().path("settings");
+            Map<String, String> original = new LinkedHashMap<>();
+            original.put(REFRESH_INTERVAL, settings.hasNonNull(REFRESH_INTERVAL) ? settings.get(REFRESH_INTERVAL).asText() : null);
+            original.put(NUMBER_OF_REPLICAS, settings.hasNonNull(NUMBER_OF_REPLICAS) ? settings.get(NUMBER_OF_REPLICAS).asText() : null);
+            originals.put(field.getKey(), original);
+        }
+        ObjectNode body = RawJson.MAPPER.createObjectNode();
+        body.put(REFRESH_INTERVAL, options.getRefreshInterval());
+        body.put(NUMBER_OF_REPLICAS, options.getReplicas());
+        util.performJson("PUT", "/" + indicesName + "/_settings", null, body.toString());
+    }
+
+    /**
+     * 恢复原有设置并 refresh，按配置 force merge，任一步骤失败时仍会执行后续步骤，最后抛出首个异常
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException failure = null;
+        for (Map.Entry<String, Map<String, String>> entry : originals.entrySet()) {
+            ObjectNode body = RawJson.MAPPER.createObjectNode();
+            for (Map.Entry<String, String> setting : entry.getValue().entrySet()) {
+                if (setting.getValue() == null) {
+                    body.putNull(setting.getKey());
+                } else {
+                    body.put(setting.getKey(), setting.getValue());
+                }
+            }
+            try {
+                util.performJson("PUT", "/" + entry.getKey() + "/_settings", null, body.toString());
+            } catch (IOException e) {
+                failure = first(failure, e);
+            }
+        }
+        try {
+            util.refresh(indicesName);
+            if (options.isForceMerge()) {
+                util.performJson("POST", "/" + indicesName + "/_forcemerge",
+                        Collections.singletonMap("max_num_segments", String.valueOf(options.getMaxNumSegments())), null);
+            }
+        } catch (IOException e) {
+            failure = first(failure, e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static IOException first(IOException failure, IOException e) {
+        if (failure == null) {
+            return e;
+        }
+        failure.addSuppressed(e);
+        return failure;
+    }
+
+}
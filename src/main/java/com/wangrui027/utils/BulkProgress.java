@@ -0,0 +1,45 @@
+package com.wangrui027.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 流式批量写入的累计进度
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BulkProgress {
+
+    /**
+     * 已完成的 bulk 请求数
+     */
+    private final long requests;
+
+    /**
+     * 已提交的文档数
+     */
+    private final long docs;
+
+    /**
+     * 已提交的估算字节数
+     */
+    private final long bytes;
+
+    /**
+     * 失败的文档数
+     */
+    private final long failures;
+
+    /**
+     * 自开始写入以来的耗时，单位毫秒
+     */
+    private final long elapsedMillis;
+
+    /**
+     * 最近一次 bulk 请求的统计信息，尚无请求完成时为 null
+     */
+    private final BulkStats last;
+
+}
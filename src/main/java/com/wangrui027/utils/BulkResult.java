@@ -0,0 +1,58 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * 带重试的批量操作结果
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BulkResult {
+
+    /**
+     * 每个操作最终的返回条目，顺序与提交的操作一致
+     */
+    @ToString.Exclude
+    private final List<BulkResponseItem> items;
+
+    /**
+     * 首次请求即成功的操作数
+     */
+    private final int succeeded;
+
+    /**
+     * 经过重试后成功的条目
+     */
+    @ToString.Exclude
+    private final List<BulkResponseItem> retriedSuccesses;
+
+    /**
+     * 最终失败的条目，包含不可重试的错误和超出重试预算的错误
+     */
+    @ToString.Exclude
+    private final List<BulkResponseItem> failures;
+
+    /**
+     * 实际请求次数
+     */
+    private final int attempts;
+
+    /**
+     * 各次请求 ES 返回的 took 之和，单位毫秒
+     */
+    private final long took;
+
+    /**
+     * @return 是否存在最终失败的条目
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+}
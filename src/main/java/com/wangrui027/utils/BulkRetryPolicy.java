@@ -0,0 +1,105 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.ErrorCause;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * bulk 失败条目的重试策略，采用带随机抖动的指数退避
+ */
+@Getter
+@Builder
+public class BulkRetryPolicy {
+
+    /**
+     * 最大尝试次数，包含首次请求
+     */
+    @Builder.Default
+    private int maxAttempts = 5;
+
+    /**
+     * 首次重试的退避时间，单位毫秒
+     */
+    @Builder.Default
+    private long initialBackoffMillis = 100;
+
+    /**
+     * 单次退避时间上限，单位毫秒
+     */
+    @Builder.Default
+    private long maxBackoffMillis = 10_000;
+
+    /**
+     * 总耗时上限，单位毫秒，超出后不再重试，小于等于 0 表示不限制
+     */
+    @Builder.Default
+    private long maxElapsedMillis = 60_000;
+
+    /**
+     * 可重试的 HTTP 状态码
+     */
+    @Builder.Default
+    private Set<Integer> retryableStatuses = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+
+    /**
+     * 可重试的错误类型
+     */
+    @Builder.Default
+    private Set<String> retryableErrorTypes = Collections.singleton("es_rejected_execution_exception");
+
+    /**
+     * 默认重试策略
+     *
+     * @return 重试策略
+     */
+    public static BulkRetryPolicy defaults() {
+        return builder().build();
+    }
+
+    /**
+     * 判断失败条目是否可重试
+     *
+     * @param item bulk 返回条目
+     * @return 是否可重试
+     */
+    public boolean isRetryable(BulkResponseItem item) {
+        ErrorCause error = item.error();
+        if (error == null) {
+            return false;
+        }
+        return retryableStatuses.contains(item.status()) || retryableErrorTypes.contains(error.type());
+    }
+
+    /**
+     * 判断整体失败的请求是否可重试
+     *
+     * @param status HTTP 状态码
+     * @return 是否可重试
+     */
+    public boolean isRetryable(int status) {
+        return retryableStatuses.contains(status);
+    }
+
+    /**
+     * 计算第 attempt 次请求失败后的退避时间，在 [delay/2, delay] 区间内随机
+     *
+     * @param attempt 已尝试次数，从 1 开始
+     * @return 退避时间，单位毫秒
+     */
+    public long backoffMillis(int attempt) {
+        long delay = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (delay <= 0 || delay > maxBackoffMillis) {
+            delay = maxBackoffMillis;
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+}
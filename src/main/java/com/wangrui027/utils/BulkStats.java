@@ -0,0 +1,45 @@
+package com.wangrui027.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 单次 bulk 请求的统计信息
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BulkStats {
+
+    /**
+     * bulk 请求序号
+     */
+    private final long executionId;
+
+    /**
+     * 本次提交的文档数
+     */
+    private final int docs;
+
+    /**
+     * 本次提交的文档估算字节数
+     */
+    private final long bytes;
+
+    /**
+     * ES 返回的 took，单位毫秒，请求失败时为 -1
+     */
+    private final long took;
+
+    /**
+     * 客户端耗时，单位毫秒
+     */
+    private final long wallMillis;
+
+    /**
+     * 失败的文档数
+     */
+    private final int failures;
+
+}
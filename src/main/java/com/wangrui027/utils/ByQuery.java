@@ -0,0 +1,69 @@
+package com.wangrui027.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 以服务端任务执行的 delete_by_query、update_by_query，文档 ID 不经过客户端
+ */
+final class ByQuery {
+
+    static final String DELETE = "_delete_by_query";
+
+    static final String UPDATE = "_update_by_query";
+
+    private ByQuery() {
+    }
+
+    /**
+     * 提交任务，不等待完成。提交后立即失效涉及索引的缓存，不轮询任务的调用方也不会一直读到旧文档；
+     * 任务执行期间读到的结果仍可能被缓存，查询到任务结束时再失效一次
+     *
+     * @param action {@link #DELETE} 或 {@link #UPDATE}
+     */
+    static EsTask start(ESUtil util, String action, String indicesName, ByQueryOptions options) throws IOException {
+        if (DELETE.equals(action) && options.getQuery() == null) {
+            throw new IllegalArgumentException("deleteByQuery 需要指定 query，删除全部文档请传入 match_all");
+        }
+        ObjectNode body = RawJson.MAPPER.createObjectNode();
+        if (options.getQuery() != null) {
+            body.set("query", RawJson.MAPPER.readTree(util.toJson(options.getQuery())));
+        }
+        if (UPDATE.equals(action) && options.getScript() != null) {
+            ObjectNode script = body.putObject("script");
+            script.put("source", options.getScript());
+            script.put("lang", options.getScriptLang());
+            if (options.getScriptParams() != null) {
+                script.set("params", RawJson.MAPPER.valueToTree(options.getScriptParams()));
+            }
+        }
+        if (options.getMaxDocs() > 0) {
+            body.put("max_docs", options.getMaxDocs());
+        }
+        Map<String, String> params = new HashMap<>();
+        params.put("wait_for_completion", "false");
+        params.put("refresh", String.valueOf(options.isRefresh()));
+        params.put("slices", options.getSlices() > 0 ? String.valueOf(options.getSlices()) : "auto");
+        params.put("requests_per_second", options.getRequestsPerSecond() > 0 ? String.valueOf(options.getRequestsPerSecond()) : "-1");
+        params.put("scroll_size", String.valueOf(options.getBatchSize()));
+        params.put("conflicts", options.isProceedOnConflicts() ? "proceed" : "abort");
+        if (options.getRouting() != null) {
+            params.put("routing", options.getRouting());
+        }
+        JsonNode response = util.performJson("POST", "/" + indicesName + "/" + action, params, body.toString());
+        util.afterByQuery(indicesName);
+        return new EsTask(util, response.path("task").asText(), action, () -> util.afterByQuery(indicesName));
+    }
+
+    /**
+     * 提交任务并轮询等待完成
+     */
+    static TaskProgress run(ESUtil util, String action, String indicesName, ByQueryOptions options) throws IOException {
+        return start(util, action, indicesName, options).await(options.getPollIntervalMillis(), options.getProgress());
+    }
+
+}
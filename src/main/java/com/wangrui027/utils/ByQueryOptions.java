@@ -0,0 +1,90 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * delete_by_query、update_by_query 配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class ByQueryOptions {
+
+    /**
+     * 筛选条件，deleteByQuery 必须指定，updateByQuery 为 null 时处理全部文档
+     */
+    private Query query;
+
+    /**
+     * 更新脚本，仅 updateByQuery 使用，为 null 时只重新索引文档以应用新的 mapping 或 pipeline
+     */
+    private String script;
+
+    /**
+     * 脚本参数
+     */
+    private Map<String, Object> scriptParams;
+
+    /**
+     * 脚本语言
+     */
+    @Builder.Default
+    private String scriptLang = "painless";
+
+    /**
+     * 切片数，0 表示由 ES 按分片数自动切分
+     */
+    @Builder.Default
+    private int slices = 0;
+
+    /**
+     * 每秒处理的文档数上限，小于等于 0 表示不限速
+     */
+    @Builder.Default
+    private float requestsPerSecond = -1;
+
+    /**
+     * 每批读取的文档数
+     */
+    @Builder.Default
+    private int batchSize = 1000;
+
+    /**
+     * 最多处理的文档数，小于等于 0 表示不限制
+     */
+    @Builder.Default
+    private long maxDocs = -1;
+
+    /**
+     * 版本冲突时是否继续执行，为 false 时遇到冲突即中止任务
+     */
+    @Builder.Default
+    private boolean proceedOnConflicts = false;
+
+    /**
+     * 完成后是否 refresh 涉及的索引
+     */
+    @Builder.Default
+    private boolean refresh = true;
+
+    /**
+     * 路由，只处理该路由所在分片上的文档
+     */
+    private String routing;
+
+    /**
+     * 查询任务进度的间隔，单位毫秒
+     */
+    @Builder.Default
+    private long pollIntervalMillis = 1000;
+
+    /**
+     * 进度回调，每次轮询后调用
+     */
+    private Consumer<TaskProgress> progress;
+
+}
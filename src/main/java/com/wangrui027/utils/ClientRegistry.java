@@ -0,0 +1,125 @@
+package com.wangrui027.utils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 进程级 transport 注册表，连接配置相同的 {@link ESUtil} 实例共用同一个 transport 和连接池，
+ * 按引用计数管理，最后一个使用方释放时关闭 transport
+ */
+final class ClientRegistry {
+
+    private static final Map<Key, Entry> ENTRIES = new HashMap<>();
+
+    private ClientRegistry() {
+    }
+
+    /**
+     * 获取共享的 transport，不存在时创建，引用计数加一
+     *
+     * @param key     连接配置标识
+     * @param factory transport 创建函数
+     * @return transport
+     */
+    static synchronized TransportHandle acquire(Key key, TransportFactory factory) throws IOException {
+        Entry entry = ENTRIES.get(key);
+        if (entry == null) {
+            entry = new Entry(factory.create());
+            ENTRIES.put(key, entry);
+        }
+        entry.refCount++;
+        return entry.handle;
+    }
+
+    /**
+     * 引用计数减一，归零时关闭 transport
+     *
+     * @param key 连接配置标识
+     */
+    static void release(Key key) throws IOException {
+        TransportHandle toClose = null;
+        synchronized (ClientRegistry.class) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && --entry.refCount <= 0) {
+                ENTRIES.remove(key);
+                toClose = entry.handle;
+            }
+        }
+        if (toClose != null) {
+            toClose.close();
+        }
+    }
+
+    /**
+     * @return 当前共享的 transport 数量
+     */
+    static synchronized int size() {
+        return ENTRIES.size();
+    }
+
+    /**
+     * 连接配置标识，配置按值比较，JSON 映射器、指标监听器等对象按引用比较
+     */
+    static final class Key {
+
+        private final String config;
+
+        private final Object[] instances;
+
+        Key(String config, Object... instances) {
+            this.config = config;
+            this.instances = instances;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (!config.equals(other.config) || instances.length != other.instances.length) {
+                return false;
+            }
+            for (int i = 0; i < instances.length; i++) {
+                if (instances[i] != other.instances[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = config.hashCode();
+            for (Object instance : instances) {
+                hash = 31 * hash + System.identityHashCode(instance);
+            }
+            return hash;
+        }
+
+    }
+
+    @FunctionalInterface
+    interface TransportFactory {
+
+        TransportHandle create() throws IOException;
+
+    }
+
+    private static class Entry {
+
+        private final TransportHandle handle;
+
+        private int refCount;
+
+        private Entry(TransportHandle handle) {
+            this.handle = handle;
+        }
+
+    }
+
+}
@@ -0,0 +1,286 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperationBase;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * getById 读缓存，按索引名和文档 ID 缓存反序列化后的对象，LRU 淘汰，支持按数量、权重和有效期失效。
+ * <br/>
+ * 通过同一个 {@link ESUtil} 写入时按文档失效，并留下带 seq_no 的墓碑：读取开始后才发生的写入会让该次读取结果不被缓存，
+ * 除非读到的版本不比写入的版本旧。墓碑数量超出上限时退化为按失效序号整体拒绝。其它客户端的写入只能依靠有效期失效。
+ * <br/>
+ * 未配置 copier 时缓存的对象直接返回给调用方，调用方不能修改。
+ */
+class DocumentCache {
+
+    /**
+     * 墓碑保留时间，需大于单次读取请求的最长耗时
+     */
+    private static final long TOMBSTONE_MILLIS = 120_000;
+
+    private final DocumentCacheConfig config;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, Tombstone> tombstones = new LinkedHashMap<>();
+
+    private long weight;
+
+    private long epoch;
+
+    /**
+     * 因超出数量上限被丢弃的墓碑中最新的失效序号，早于该序号开始且没有墓碑的读取结果不再写回
+     */
+    private long droppedTombstoneEpoch;
+
+    /**
+     * 最近一次清空缓存时的失效序号，早于该序号开始的读取结果不再写回
+     */
+    private long clearedEpoch;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private long staleRejectCount;
+
+    DocumentCache(DocumentCacheConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return 缓存的文档，配置了 copier 时为复制后的对象，未命中、已过期或缓存时使用的类型不同时返回 null
+     */
+    Object get(String indicesName, String id, Class<?> tClass) {
+        return copy(lookup(indicesName, id, tClass));
+    }
+
+    /**
+     * @return 返回给调用方的对象，配置了 copier 时为复制后的对象
+     */
+    Object copy(Object value) {
+        return value == null || config.getCopier() == null ? value : config.getCopier().apply(value);
+    }
+
+    private synchronized Object lookup(String indicesName, String id, Class<?> tClass) {
+        String key = key(indicesName, id);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.tClass != tClass) {
+            missCount++;
+            return null;
+        }
+        if (entry.expireAt > 0 && entry.expireAt <= System.currentTimeMillis()) {
+            remove(key);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * 读取请求发送前获取，写回缓存时用于判断读取期间是否发生了写入
+     *
+     * @return 当前失效序号
+     */
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * 写回读取结果
+     *
+     * @param seqNo       读取到的 _seq_no，未知时为 null
+     * @param primaryTerm 读取到的 _primary_term，未知时为 null
+     * @param startEpoch  读取前获取的 {@link #epoch()}
+     */
+    synchronized void put(String indicesName, String id, Class<?> tClass, Object value, Long seqNo, Long primaryTerm, long startEpoch) {
+        if (value == null || id == null) {
+            return;
+        }
+        if (startEpoch < clearedEpoch) {
+            staleRejectCount++;
+            return;
+        }
+        String key = key(indicesName, id);
+        long now = System.currentTimeMillis();
+        Tombstone tombstone = tombstones.get(key);
+        if (tombstone != null && tombstone.expireAt > now && tombstone.epoch > startEpoch
+                && !notOlder(seqNo, primaryTerm, tombstone.seqNo, tombstone.primaryTerm)) {
+            staleRejectCount++;
+            return;
+        }
+        if (tombstone == null && startEpoch < droppedTombstoneEpoch) {
+            staleRejectCount++;
+            return;
+        }
+        Entry existing = entries.get(key);
+        if (existing != null && existing.seqNo != null && seqNo != null
+                && !notOlder(seqNo, primaryTerm, existing.seqNo, existing.primaryTerm)) {
+            return;
+        }
+        remove(key);
+        long entryWeight = config.getWeigher() == null ? 1 : Math.max(0, config.getWeigher().applyAsLong(value));
+        long expireAt = config.getTtlMillis() > 0 ? now + config.getTtlMillis() : 0;
+        entries.put(key, new Entry(tClass, value, seqNo, primaryTerm, entryWeight, expireAt));
+        weight += entryWeight;
+        evict();
+    }
+
+    /**
+     * 写入后失效文档
+     *
+     * @param seqNo       写入返回的 _seq_no，写入失败或未知时为 null
+     * @param primaryTerm 写入返回的 _primary_term，未知时为 null
+     */
+    synchronized void invalidate(String indicesName, String id, Long seqNo, Long primaryTerm) {
+        if (id == null) {
+            return;
+        }
+        epoch++;
+        String key = key(indicesName, id);
+        remove(key);
+        long now = System.currentTimeMillis();
+        tombstones.remove(key);
+        tombstones.put(key, new Tombstone(seqNo, primaryTerm, epoch, now + TOMBSTONE_MILLIS));
+        Iterator<Tombstone> iterator = tombstones.values().iterator();
+        while (iterator.hasNext()) {
+            Tombstone oldest = iterator.next();
+            if (oldest.expireAt > now && tombstones.size() <= config.getMaxTombstones()) {
+                break;
+            }
+            if (oldest.expireAt > now) {
+                droppedTombstoneEpoch = Math.max(droppedTombstoneEpoch, oldest.epoch);
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * bulk 写入后失效文档，操作与返回条目按位置对应，请求整体失败时 response 为 null
+     */
+    void invalidate(List<BulkOperation> operations, BulkResponse response) {
+        List<BulkResponseItem> items = response == null ? null : response.items();
+        for (int i = 0; i < operations.size(); i++) {
+            BulkOperationBase operation = (BulkOperationBase) operations.get(i)._get();
+            BulkResponseItem item = items != null && i < items.size() ? items.get(i) : null;
+            String id = operation.id() != null ? operation.id() : item == null ? null : item.id();
+            String indicesName = operation.index() != null ? operation.index() : item == null ? null : item.index();
+            if (item == null) {
+                invalidate(indicesName, id, null, null);
+            } else {
+                invalidate(indicesName, id, item.seqNo(), item.primaryTerm());
+            }
+        }
+    }
+
+    /**
+     * 按返回条目中的索引名和文档 ID 失效，用于没有操作列表的原始 bulk 请求
+     */
+    void invalidate(BulkResponse response) {
+        for (BulkResponseItem item : response.items()) {
+            invalidate(item.index(), item.id(), item.seqNo(), item.primaryTerm());
+        }
+    }
+
+    /**
+     * 清空缓存，已在途的读取结果不会再写回
+     */
+    synchronized void invalidateAll() {
+        clearedEpoch = ++epoch;
+        entries.clear();
+        weight = 0;
+    }
+
+    synchronized DocumentCacheStats stats() {
+        return new DocumentCacheStats(hitCount, missCount, evictionCount, staleRejectCount, entries.size(), weight);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > config.getMaxSize()
+                || (config.getMaxWeight() > 0 && weight > config.getMaxWeight()))) {
+            weight -= iterator.next().getValue().weight;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    /**
+     * 按 (_primary_term, _seq_no) 比较版本，任一方未知时视为更旧
+     */
+    private static boolean notOlder(Long seqNo, Long primaryTerm, Long otherSeqNo, Long otherPrimaryTerm) {
+        if (seqNo == null || otherSeqNo == null) {
+            return false;
+        }
+        if (primaryTerm != null && otherPrimaryTerm != null && !primaryTerm.equals(otherPrimaryTerm)) {
+            return primaryTerm > otherPrimaryTerm;
+        }
+        return seqNo >= otherSeqNo;
+    }
+
+    private static String key(String indicesName, String id) {
+        return indicesName + '/' + id;
+    }
+
+    private static class Entry {
+
+        private final Class<?> tClass;
+
+        private final Object value;
+
+        private final Long seqNo;
+
+        private final Long primaryTerm;
+
+        private final long weight;
+
+        private final long expireAt;
+
+        private Entry(Class<?> tClass, Object value, Long seqNo, Long primaryTerm, long weight, long expireAt) {
+            this.tClass = tClass;
+            this.value = value;
+            this.seqNo = seqNo;
+            this.primaryTerm = primaryTerm;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+
+    }
+
+    private static class Tombstone {
+
+        private final Long seqNo;
+
+        private final Long primaryTerm;
+
+        private final long epoch;
+
+        private final long expireAt;
+
+        private Tombstone(Long seqNo, Long primaryTerm, long epoch, long expireAt) {
+            this.seqNo = seqNo;
+            this.primaryTerm = primaryTerm;
+            this.epoch = epoch;
+            this.expireAt = expireAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * getById 读缓存配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class DocumentCacheConfig {
+
+    /**
+     * 最大缓存文档数
+     */
+    @Builder.Default
+    private int maxSize = 10_000;
+
+    /**
+     * 最大总权重，0 表示不按权重淘汰
+     */
+    @Builder.Default
+    private long maxWeight = 0;
+
+    /**
+     * 文档权重计算函数，如估算的字节数，不传则每个文档权重为 1
+     */
+    private ToLongFunction<Object> weigher;
+
+    /**
+     * 缓存有效期，单位毫秒，0 表示不过期，仅在淘汰或写入时失效
+     */
+    @Builder.Default
+    private long ttlMillis = 60_000;
+
+    /**
+     * 最多保留的写入墓碑数，超出时丢弃最早的墓碑，并拒绝写回在其之前开始的所有读取结果
+     */
+    @Builder.Default
+    private int maxTombstones = 100_000;
+
+    /**
+     * 返回给调用方前复制缓存的对象，不传则调用方拿到的是缓存中的同一个对象，不能修改
+     */
+    private UnaryOperator<Object> copier;
+
+}
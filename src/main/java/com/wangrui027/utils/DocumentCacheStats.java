@@ -0,0 +1,53 @@
+package com.wangrui027.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * getById 读缓存统计
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class DocumentCacheStats {
+
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+
+    /**
+     * 未命中次数，包含已过期的文档
+     */
+    private final long missCount;
+
+    /**
+     * 因容量或权重被淘汰的文档数
+     */
+    private final long evictionCount;
+
+    /**
+     * 因读取期间发生写入而放弃缓存的次数
+     */
+    private final long staleRejectCount;
+
+    /**
+     * 当前缓存文档数
+     */
+    private final int size;
+
+    /**
+     * 当前总权重
+     */
+    private final long weight;
+
+    /**
+     * @return 命中率，没有请求时为 0
+     */
+    public double hitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+}
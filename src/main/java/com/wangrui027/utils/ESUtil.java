@@ -1,34 +1,84 @@
 package com.wangrui027.utils;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
 import co.elastic.clients.elasticsearch._types.Result;
+import co.elastic.clients.elasticsearch._types.WriteResponseBase;
 import co.elastic.clients.elasticsearch.core.*;
 import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperationBase;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import co.elastic.clients.elasticsearch.indices.ExistsRequest;
 import co.elastic.clients.elasticsearch.indices.*;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpSerializable;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.endpoints.BooleanResponse;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
 import lombok.Builder;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
 import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.sniff.ElasticsearchNodesSniffer;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
 
+import javax.net.ssl.SSLContext;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * ES 工具封装
@@ -68,46 +118,334 @@ public class ESUtil {
      */
     private String indicesName;
 
+    /**
+     * 集群节点地址，格式为 host:port 或 scheme://host:port，不传则使用 ip、port、scheme
+     */
+    private List<String> hosts;
+
+    /**
+     * 连接池最大连接数
+     */
+    @Builder.Default
+    private Integer maxConnTotal = 200;
+
+    /**
+     * 每个节点的最大连接数
+     */
+    @Builder.Default
+    private Integer maxConnPerRoute = 50;
+
+    /**
+     * I/O 线程数，不传则为 CPU 核数
+     */
+    private Integer ioThreadCount;
+
+    /**
+     * 空闲连接保持时间，单位毫秒
+     */
+    @Builder.Default
+    private Long keepAliveMillis = 60_000L;
+
+    /**
+     * 建立连接超时时间，单位毫秒
+     */
+    @Builder.Default
+    private Integer connectTimeoutMillis = 1000;
+
+    /**
+     * 读取响应超时时间，单位毫秒
+     */
+    @Builder.Default
+    private Integer socketTimeoutMillis = 30_000;
+
+    /**
+     * 是否开启 gzip 压缩请求 body，并接受 gzip 压缩的响应
+     */
+    @Builder.Default
+    private Boolean compression = false;
+
+    /**
+     * 是否开启节点嗅探，定时从集群获取节点列表，请求失败时立即嗅探
+     */
+    @Builder.Default
+    private Boolean sniff = false;
+
+    /**
+     * 节点嗅探间隔，单位毫秒
+     */
+    @Builder.Default
+    private Integer sniffIntervalMillis = 300_000;
+
+    /**
+     * 是否与连接配置相同的其它实例共用 transport 和连接池，共用时 {@link #close()} 仅在最后一个使用方关闭时真正关闭 transport
+     */
+    @Builder.Default
+    private Boolean shareTransport = false;
+
+    /**
+     * JSON 映射器，不传则使用 {@link JsonpMappers#defaultMapper()}，自定义时建议在多个实例间复用同一个对象
+     */
+    private JsonpMapper jsonpMapper;
+
+    /**
+     * 指标监听器，不传则不采集指标，传入后单独创建连接池以便统计连接使用情况
+     */
+    private EsMetrics metrics;
+
+    /**
+     * getById 读缓存配置，不传则不缓存，通过当前实例写入时自动失效对应文档
+     */
+    private DocumentCacheConfig documentCache;
+
+    /**
+     * 检索结果缓存配置，不传则不缓存，通过当前实例写入或 refresh 时自动失效涉及的索引
+     */
+    private SearchCacheConfig searchCache;
+
+    /**
+     * 单个 _mget 请求的最大 ID 数，超出时拆分为多个请求并发发送
+     */
+    @Builder.Default
+    private Integer mgetChunkSize = 1000;
+
     private final AtomicReference<ElasticsearchTransport> transport = new AtomicReference<>(null);
     /**
      * 客户端对象
      */
     private final AtomicReference<ElasticsearchClient> client = new AtomicReference<>(null);
+    /**
+     * 异步客户端对象，与同步客户端共用 transport
+     */
+    private final AtomicReference<ElasticsearchAsyncClient> asyncClient = new AtomicReference<>(null);
+    /**
+     * transport 及节点嗅探器
+     */
+    private final AtomicReference<TransportHandle> transportHandle = new AtomicReference<>(null);
+
+    private final Object initLock = new Object();
+
+    /**
+     * 调用 {@link #close()} 后为 true，之后不再创建或获取 transport
+     */
+    private volatile boolean closed;
+
+    /**
+     * getById 读缓存，首次使用时按 documentCache 配置创建
+     */
+    private final AtomicReference<DocumentCache> documentCacheRef = new AtomicReference<>(null);
+
+    /**
+     * 检索结果缓存，首次使用时按 searchCache 配置创建
+     */
+    private final AtomicReference<SearchCache> searchCacheRef = new AtomicReference<>(null);
+
+    /**
+     * 按分片分组 bulk 使用的路由信息缓存，首次使用时创建
+     */
+    private final AtomicReference<ShardRouter> shardRouterRef = new AtomicReference<>(null);
+
+    /**
+     * 索引模板和索引存在性缓存，首次注册模板或查询时创建
+     */
+    private final AtomicReference<IndexManager> indexManagerRef = new AtomicReference<>(null);
 
     public static ESUtil of(Function<ESUtilBuilder, ESUtilBuilder> fn) {
         return fn.apply(new ESUtilBuilder()).build();
     }
 
     /**
-     * 获取 ES 客户端
+     * 获取 ES 客户端，首次调用时创建，多线程并发调用只会创建一次
      *
      * @return ES 客户端
      */
     public ElasticsearchClient getClient() {
-        if (client.get() == null) {
-            RestClientBuilder builder = RestClient
-                    .builder(new HttpHost(ip, port, scheme))
-                    .setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
+        ElasticsearchClient current = client.get();
+        if (current != null) {
+            return current;
+        }
+        synchronized (initLock) {
+            if (closed) {
+                throw new IllegalStateException("ESUtil 已关闭");
+            }
+            if (client.get() == null) {
+                TransportHandle handle;
+                try {
+                    handle = shareTransport ? ClientRegistry.acquire(registryKey(), this::createTransport) : createTransport();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                transportHandle.set(handle);
+                transport.set(handle.transport);
+                asyncClient.set(new ElasticsearchAsyncClient(handle.transport));
+                client.set(new ElasticsearchClient(handle.transport));
+            }
+            return client.get();
+        }
+    }
+
+    private TransportHandle createTransport() {
+        IOReactorConfig.Builder ioReactorConfig = IOReactorConfig.custom().setSoKeepAlive(true);
+        if (ioThreadCount != null) {
+            ioReactorConfig.setIoThreadCount(ioThreadCount);
+        }
+        RestClientBuilder builder = RestClient
+                .builder(httpHosts())
+                .setCompressionEnabled(compression)
+                .setRequestConfigCallback(requestConfigBuilder -> requestConfigBuilder
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(socketTimeoutMillis)
+                )
+                .setHttpClientConfigCallback(httpClientBuilder -> {
+                    httpClientBuilder
+                            .setMaxConnTotal(maxConnTotal)
+                            .setMaxConnPerRoute(maxConnPerRoute)
+                            .setDefaultIOReactorConfig(ioReactorConfig.build())
+                            .setKeepAliveStrategy((response, context) -> keepAliveMillis)
                             .setDefaultHeaders(Collections.singletonList(new BasicHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString())))
-                            .addInterceptorLast((HttpResponseInterceptor) (request, context) -> request.addHeader("X-Elastic-Product", "Elasticsearch"))
-                    );
-            if (username != null && password != null) {
-                builder.setDefaultHeaders(new Header[]{
-                        new BasicHeader("Authorization", "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8))),
+                            .addInterceptorLast((HttpResponseInterceptor) (request, context) -> request.addHeader("X-Elastic-Product", "Elasticsearch"));
+                    if (metrics != null) {
+                        instrument(httpClientBuilder, ioReactorConfig.build());
+                    }
+                    return httpClientBuilder;
                 });
-            }
-            transport.set(new RestClientTransport(builder.build(), new JacksonJsonpMapper()));
-            client.set(new ElasticsearchClient(transport.get()));
+        if (username != null && password != null) {
+            builder.setDefaultHeaders(new Header[]{
+                    new BasicHeader("Authorization", "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8))),
+            });
+        }
+        SniffOnFailureListener sniffOnFailureListener = null;
+        if (sniff) {
+            sniffOnFailureListener = new SniffOnFailureListener();
+            builder.setFailureListener(sniffOnFailureListener);
+        }
+        RestClient restClient = builder.build();
+        Sniffer sniffer = null;
+        if (sniffOnFailureListener != null) {
+            // 默认的 NodesSniffer 按 http 拼接嗅探到的节点地址，https 集群需要显式指定协议
+            ElasticsearchNodesSniffer.Scheme sniffScheme = "https".equalsIgnoreCase(httpHosts()[0].getSchemeName())
+                    ? ElasticsearchNodesSniffer.Scheme.HTTPS : ElasticsearchNodesSniffer.Scheme.HTTP;
+            sniffer = Sniffer.builder(restClient)
+                    .setSniffIntervalMillis(sniffIntervalMillis)
+                    .setNodesSniffer(new ElasticsearchNodesSniffer(restClient, ElasticsearchNodesSniffer.DEFAULT_SNIFF_REQUEST_TIMEOUT, sniffScheme))
+                    .build();
+            sniffOnFailureListener.setSniffer(sniffer);
+        }
+        return new TransportHandle(new RestClientTransport(restClient, jsonpMapper != null ? jsonpMapper : JsonpMappers.defaultMapper()), sniffer);
+    }
+
+    /**
+     * 使用自行创建的连接池以便读取连接统计，并通过拦截器统计请求和响应字节数。
+     * 自定义连接池时 HttpAsyncClientBuilder 上的 SSL 和 I/O 配置不再生效，这里按 RestClientBuilder 的默认值重新设置
+     */
+    private void instrument(HttpAsyncClientBuilder httpClientBuilder, IOReactorConfig ioReactorConfig) {
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            Registry<SchemeIOSessionStrategy> strategies = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", new SSLIOSessionStrategy(SSLContext.getDefault(), null, null, SSLIOSessionStrategy.getDefaultHostnameVerifier()))
+                    .build();
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig), strategies);
+        } catch (IOReactorException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("创建连接池失败", e);
+        }
+        connectionManager.setMaxTotal(maxConnTotal);
+        connectionManager.setDefaultMaxPerRoute(maxConnPerRoute);
+        httpClientBuilder
+                .setConnectionManager(connectionManager)
+                .addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
+                    HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+                    metrics.onHttpRequest(entity == null ? 0 : entity.getContentLength());
+                })
+                .addInterceptorLast((HttpResponseInterceptor) (response, context) -> {
+                    HttpEntity entity = response.getEntity();
+                    metrics.onHttpResponse(response.getStatusLine().getStatusCode(), entity == null ? 0 : entity.getContentLength());
+                });
+        metrics.onConnectionPool(connectionManager::getTotalStats);
+    }
+
+    /**
+     * 共享 transport 的标识，包含所有影响 transport 的连接配置，JSON 映射器和指标监听器按引用比较
+     */
+    private ClientRegistry.Key registryKey() {
+        String config = Arrays.asList(Arrays.toString(httpHosts()), credentialsDigest(), maxConnTotal, maxConnPerRoute, ioThreadCount,
+                keepAliveMillis, connectTimeoutMillis, socketTimeoutMillis, compression, sniff, sniffIntervalMillis).toString();
+        return new ClientRegistry.Key(config, jsonpMapper, metrics);
+    }
+
+    /**
+     * 注册表长期持有标识，不保存明文密码
+     */
+    private String credentialsDigest() {
+        if (username == null && password == null) {
+            return null;
         }
-        return client.get();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpHost[] httpHosts() {
+        if (hosts == null || hosts.isEmpty()) {
+            return new HttpHost[]{new HttpHost(ip, port, scheme)};
+        }
+        return hosts.stream()
+                .map(host -> HttpHost.create(host.contains("://") ? host : scheme + "://" + host))
+                .toArray(HttpHost[]::new);
+    }
+
+    /**
+     * 获取 ES 异步客户端，与 {@link #getClient()} 共用同一个 transport
+     *
+     * @return ES 异步客户端
+     */
+    public ElasticsearchAsyncClient getAsyncClient() {
+        getClient();
+        return asyncClient.get();
+    }
+
+    /**
+     * 获取底层 REST 客户端，与 {@link #getClient()} 共用连接池
+     *
+     * @return REST 客户端
+     */
+    public RestClient getRestClient() {
+        getClient();
+        return ((RestClientTransport) transport.get()).restClient();
+    }
+
+    /**
+     * 获取客户端使用的 JSON 映射器
+     *
+     * @return JSON 映射器
+     */
+    public JsonpMapper getJsonpMapper() {
+        getClient();
+        return transport.get().jsonpMapper();
     }
 
     /**
-     * 关闭 transport
+     * 关闭 transport，共享 transport 时仅在最后一个使用方关闭时真正关闭，关闭后再调用 {@link #getClient()} 抛出 IllegalStateException
      */
     public void close() throws IOException {
-        if (transport.get() != null) {
-            transport.get().close();
+        TransportHandle handle;
+        synchronized (initLock) {
+            closed = true;
+            handle = transportHandle.getAndSet(null);
+            client.set(null);
+            asyncClient.set(null);
+            transport.set(null);
+        }
+        if (handle == null) {
+            return;
+        }
+        if (shareTransport) {
+            ClientRegistry.release(registryKey());
+        } else {
+            handle.close();
         }
     }
 
@@ -198,6 +536,11 @@ public class ESUtil {
             }
         }
         CreateIndexResponse response = indicesClient.create(builder.build());
+        invalidateShardRouting(indicesName);
+        IndexManager manager = indexManagerRef.get();
+        if (manager != null) {
+            manager.created(indicesName);
+        }
         return response.acknowledged();
     }
 
@@ -210,6 +553,8 @@ public class ESUtil {
     public boolean indicesDelete(String indicesName) throws IOException {
         ElasticsearchIndicesClient indicesClient = getClient().indices();
         DeleteIndexResponse response = indicesClient.delete(DeleteIndexRequest.of(e -> e.index(indicesName)));
+        invalidateShardRouting(indicesName);
+        invalidateIndexCache(indicesName);
         return response.acknowledged();
     }
 
@@ -233,7 +578,7 @@ public class ESUtil {
         if (indicesName == null) {
             return count();
         }
-        CountResponse count = getClient().count(e -> e.index(indicesName));
+        CountResponse count = timed(EsMetrics.COUNT, () -> getClient().count(e -> e.index(indicesName)));
         return count.count();
     }
 
@@ -252,7 +597,7 @@ public class ESUtil {
      * @return 文档总数
      */
     public long countAll() throws IOException {
-        CountResponse count = getClient().count();
+        CountResponse count = timed(EsMetrics.COUNT, () -> getClient().count());
         return count.count();
     }
 
@@ -265,11 +610,12 @@ public class ESUtil {
      * @return 文档 ID
      */
     public <T> String save(String indicesName, T object, String id) throws IOException {
-        IndexResponse response = getClient().index(e -> e
-                .index(indicesName)
+        String index = writeIndex(indicesName);
+        IndexResponse response = written(index, id, () -> timed(EsMetrics.INDEX, () -> getClient().index(e -> e
+                .index(index)
                 .id(id)
                 .document(object)
-        );
+        )));
         return response.id();
     }
 
@@ -310,14 +656,14 @@ public class ESUtil {
      * @param indicesName 索引名
      * @param id          文档id
      * @param object      文档对象
-     * @return 是否更新成功
+     * @return 是否更新成功，内容未变化（noop）同样视为成功
      */
     public <T> boolean update(String indicesName, String id, T object) throws IOException {
-        UpdateResponse<?> response = getClient().update(UpdateRequest.of(ur -> ur
+        UpdateResponse<?> response = written(indicesName, id, () -> timed(EsMetrics.UPDATE, () -> getClient().update(UpdateRequest.of(ur -> ur
                 .index(indicesName)
                 .id(id)
-                .doc(object)), object.getClass());
-        return Result.Updated.equals(response.result());
+                .doc(object)), object.getClass())));
+        return Result.Updated.equals(response.result()) || Result.NoOp.equals(response.result());
     }
 
     /**
@@ -339,10 +685,10 @@ public class ESUtil {
      * @return 文档是否删除成功
      */
     public boolean delete(String indicesName, String id) throws IOException {
-        DeleteResponse response = getClient().delete(e -> e
+        DeleteResponse response = written(indicesName, id, () -> timed(EsMetrics.DELETE, () -> getClient().delete(e -> e
                 .index(indicesName)
                 .id(id)
-        );
+        )));
         return Result.Deleted.equals(response.result());
     }
 
@@ -364,12 +710,19 @@ public class ESUtil {
      * @return 批量操作返回对象
      */
     public BulkResponse delete(String indicesName, Collection<String> ids) throws IOException {
-        List<BulkOperation> operations = ids.stream().map(id -> BulkOperation.of(bo -> bo
-                .delete(e -> e
-                        .index(indicesName)
-                        .id(id)))
-        ).collect(Collectors.toList());
-        return bulk(operations);
+        return bulk(deleteOperations(indicesName, ids));
+    }
+
+    /**
+     * 批量删除文档，仅重试失败且可重试的条目
+     *
+     * @param indicesName 索引名
+     * @param ids         批量删除的文档 ID 集合
+     * @param retryPolicy 重试策略
+     * @return 带重试的批量操作结果
+     */
+    public BulkResult delete(String indicesName, Collection<String> ids, BulkRetryPolicy retryPolicy) throws IOException {
+        return bulk(deleteOperations(indicesName, ids), retryPolicy);
     }
 
     /**
@@ -382,6 +735,17 @@ public class ESUtil {
         return delete(indicesName, ids);
     }
 
+    /**
+     * 批量删除文档，仅重试失败且可重试的条目
+     *
+     * @param ids         批量删除的文档 ID 集合
+     * @param retryPolicy 重试策略
+     * @return 带重试的批量操作结果
+     */
+    public BulkResult delete(Collection<String> ids, BulkRetryPolicy retryPolicy) throws IOException {
+        return delete(indicesName, ids, retryPolicy);
+    }
+
     /**
      * 批量保存文档
      *
@@ -405,6 +769,27 @@ public class ESUtil {
         if (list == null || list.isEmpty()) {
             return null;
         }
+        return bulk(indexOperations(indicesName, list, ids));
+    }
+
+    /**
+     * 批量保存文档，仅重试失败且可重试的条目（如 429 es_rejected_execution_exception），已成功的文档不会重复写入
+     *
+     * @param indicesName 索引名
+     * @param list        批量保存的文档集合
+     * @param ids         批量保存的 ID 集合
+     * @param retryPolicy 重试策略
+     * @return 带重试的批量操作结果
+     */
+    public <T> BulkResult save(String indicesName, List<T> list, List<String> ids, BulkRetryPolicy retryPolicy) throws IOException {
+        if (list == null || list.isEmpty()) {
+            return null;
+        }
+        return bulk(indexOperations(indicesName, list, ids), retryPolicy);
+    }
+
+    private <T> List<BulkOperation> indexOperations(String indicesName, List<T> list, List<String> ids) throws IOException {
+        String index = writeIndex(indicesName);
         if (ids == null) {
             ids = Arrays.asList(new String[list.size()]);
         } else if (ids.size() != list.size()) {
@@ -415,13 +800,21 @@ public class ESUtil {
             int finalI = i;
             List<String> finalIds = ids;
             BulkOperation operation = BulkOperation.of(bo -> bo.index(e -> e
-                    .index(indicesName)
+                    .index(index)
                     .id(finalIds.get(finalI))
                     .document(list.get(finalI))
             ));
             operations.add(operation);
         }
-        return bulk(operations);
+        return operations;
+    }
+
+    private List<BulkOperation> deleteOperations(String indicesName, Collection<String> ids) {
+        return ids.stream().map(id -> BulkOperation.of(bo -> bo
+                .delete(e -> e
+                        .index(indicesName)
+                        .id(id)))
+        ).collect(Collectors.toList());
     }
 
     /**
@@ -431,112 +824,2056 @@ public class ESUtil {
      * @return 批量操作返回对象
      */
     public BulkResponse bulk(List<BulkOperation> operations) throws IOException {
-        return getClient().bulk(BulkRequest.of(br -> br.operations(operations)));
+        if (!cachesEnabled()) {
+            return timed(EsMetrics.BULK, () -> getClient().bulk(BulkRequest.of(br -> br.operations(operations))));
+        }
+        BulkResponse response;
+        try {
+            response = timed(EsMetrics.BULK, () -> getClient().bulk(BulkRequest.of(br -> br.operations(operations))));
+        } catch (IOException | RuntimeException e) {
+            afterBulk(operations, null);
+            throw e;
+        }
+        afterBulk(operations, response);
+        return response;
     }
 
     /**
-     * 批量保存文档
+     * 按分片分组的批量操作，在客户端按 _routing 或 ID 计算每个文档的主分片，按分片或节点拆分为多个请求并发提交，
+     * 返回时按原顺序合并，某个分组整体失败时该分组的条目记为失败
+     * <pre>
+     * BulkResponse response = util.bulkByShard(operations, e -&gt; e
+     *         .mode(ShardBulkMode.NODE)
+     *         .maxConcurrentRequests(4));
+     * </pre>
      *
-     * @param list 批量保存的文档集合
-     * @return 批量操作返回对象
+     * @param operations 批量操作
+     * @param fn         分组配置
+     * @return 合并后的批量操作返回对象，took 为各请求的最大值
      */
-    public <T> BulkResponse save(List<T> list) throws IOException {
-        return save(indicesName, list, Arrays.asList(new String[list.size()]));
+    public BulkResponse bulkByShard(List<BulkOperation> operations, Function<ShardBulkConfig.ShardBulkConfigBuilder, ShardBulkConfig.ShardBulkConfigBuilder> fn) throws IOException {
+        return await(bulkByShardAsync(operations, fn));
     }
 
     /**
-     * 批量保存文档
+     * 按分片分组的批量操作，使用默认配置
      *
-     * @param list 批量保存的文档集合
-     * @param ids  批量保存的 ID 集合
-     * @return 批量操作返回对象
+     * @param operations 批量操作
+     * @return 合并后的批量操作返回对象
      */
-    public <T> BulkResponse save(List<T> list, List<String> ids) throws IOException {
-        return save(indicesName, list, ids);
+    public BulkResponse bulkByShard(List<BulkOperation> operations) throws IOException {
+        return bulkByShard(operations, Function.identity());
     }
 
     /**
-     * 通过 ID 检索文档
+     * 按分片分组批量保存文档
      *
      * @param indicesName 索引名
-     * @param id          文档 ID
-     * @param tClass      返回的对象类型
-     * @return 文档对象
+     * @param list        批量保存的文档集合
+     * @param ids         批量保存的 ID 集合，为 null 时由 ES 生成，无法按分片分组
+     * @return 合并后的批量操作返回对象
      */
-    public <T> T getById(String indicesName, String id, Class<T> tClass) throws IOException {
-        GetResponse<T> response = getClient().get((gr -> gr.index(indicesName).id(id)), tClass);
-        return response.source();
+    public <T> BulkResponse saveByShard(String indicesName, List<T> list, List<String> ids) throws IOException {
+        if (list == null || list.isEmpty()) {
+            return null;
+        }
+        return bulkByShard(indexOperations(indicesName, list, ids));
     }
 
     /**
-     * 通过 ID 检索文档
+     * 异步按分片分组的批量操作，索引的分片信息过期时在调用线程中同步查询一次集群状态
      *
-     * @param id     文档 ID
-     * @param tClass 返回的对象类型
-     * @return 文档对象
+     * @param operations 批量操作
+     * @param fn         分组配置
+     * @return 合并后的批量操作返回对象
      */
-    public <T> T getById(String id, Class<T> tClass) throws IOException {
-        return getById(indicesName, id, tClass);
+    public CompletableFuture<BulkResponse> bulkByShardAsync(List<BulkOperation> operations, Function<ShardBulkConfig.ShardBulkConfigBuilder, ShardBulkConfig.ShardBulkConfigBuilder> fn) {
+        return shardRouter().dispatch(operations, indicesName, fn.apply(ShardBulkConfig.builder()).build());
     }
 
     /**
-     * <h3>通过条件检索文档</h3>
-     * <br/>
-     * <br/>
-     * q 查询，仅返回 name：
-     * <pre>
-     * SearchRequest searchRequest = SearchRequest.of(sr -> sr
-     *     .index(INDEX_NAME)
-     *     .q("python")
-     *     .source(s -> s
-     *         .filter(f -> f
-     *             .includes("name")
-     *         )
-     *     )
-     * );
-     * </pre>
-     * term 查询，返回字段排除 id：
-     * <pre>
-     * SearchRequest searchRequest = SearchRequest.of(sr -> sr
-     *     .index(INDEX_NAME)
-     *     .query(q -> q
-     *         .term(t -> t
-     *             .field("name")
-     *             .value("张三")
-     *         )
-     *     )
-     *     .source(s -> s
-     *         .filter(f -> f
-     *             .excludes("id")
-     *         )
-     *     )
-     * );
-     * </pre>
-     * 多字段查询
-     * <pre>
-     * SearchRequest searchRequest = SearchRequest.of(sr -> sr
-     *     .index(INDEX_NAME)
-     *     .query(q -> q
-     *         .multiMatch(m -> m
-     *             .fields("name", "city", "description")
-     *             .query("武汉 python")
-     *         )
-     *     )
-     *     .source(s -> s
-     *         .filter(f -> f
-     *             .excludes("id")
-     *         )
-     *     )
-     * );
-     * </pre>
-     *
-     * @param searchRequest 检索条件
-     * @param tClass        返回的对象类型
-     * @return 文档对象集合
+     * 清空按分片分组 bulk 缓存的分片信息，索引拆分、收缩或别名在其它客户端变更后可以调用
      */
-    public <T> List<T> search(SearchRequest searchRequest, Class<T> tClass) throws IOException {
-        SearchResponse<T> response = getClient().search(searchRequest, tClass);
-        return response.hits().hits().stream().map(Hit::source).collect(Collectors.toList());
+    public void invalidateShardRouting() {
+        invalidateShardRouting(null);
+    }
+
+    private void invalidateShardRouting(String indicesName) {
+        ShardRouter router = shardRouterRef.get();
+        if (router != null) {
+            router.invalidate(indicesName);
+        }
+    }
+
+    private ShardRouter shardRouter() {
+        ShardRouter router = shardRouterRef.get();
+        if (router == null) {
+            shardRouterRef.compareAndSet(null, new ShardRouter(this));
+            router = shardRouterRef.get();
+        }
+        return router;
+    }
+
+    /**
+     * 注册索引模板，之后以模板名写入的文档按滚动周期写入实际索引，实际索引不存在时在首次写入前按模板创建
+     *
+     * @param template 索引模板
+     */
+    public void registerIndexTemplate(IndexTemplate template) {
+        indexManager().register(template);
+    }
+
+    /**
+     * 注册索引模板
+     *
+     * @param fn 模板配置
+     */
+    public void registerIndexTemplate(Function<IndexTemplate.IndexTemplateBuilder, IndexTemplate.IndexTemplateBuilder> fn) {
+        registerIndexTemplate(fn.apply(IndexTemplate.builder()).build());
+    }
+
+    /**
+     * 检测索引或别名是否存在，存在的结果在本地缓存，通过当前实例删除索引时失效
+     *
+     * @param indicesName 索引名或别名
+     * @return 是否存在
+     */
+    public boolean indicesExistCached(String indicesName) throws IOException {
+        return indexManager().exists(indicesName);
+    }
+
+    /**
+     * 解析别名当前的写索引，结果在本地缓存，通过当前实例切换别名时失效
+     *
+     * @param alias 别名，传入索引名时原样返回
+     * @return 写索引名
+     */
+    public String resolveWriteIndex(String alias) throws IOException {
+        return indexManager().writeIndex(alias);
+    }
+
+    /**
+     * 清空索引存在性、写索引和滚动索引名缓存，索引或别名在其它客户端变更后可以调用
+     */
+    public void invalidateIndexCache() {
+        invalidateIndexCache(null);
+    }
+
+    private void invalidateIndexCache(String indicesName) {
+        IndexManager manager = indexManagerRef.get();
+        if (manager != null) {
+            manager.invalidate(indicesName);
+        }
+    }
+
+    /**
+     * 写入前计算实际索引名，未注册模板时不产生任何开销
+     */
+    String writeIndex(String indicesName) throws IOException {
+        IndexManager manager = indexManagerRef.get();
+        return manager == null ? indicesName : manager.resolve(indicesName);
+    }
+
+    /**
+     * 只计算实际索引名，不创建索引，供集群不可用时仍需写入的 spool 使用
+     */
+    String writeIndexName(String indicesName) {
+        IndexManager manager = indexManagerRef.get();
+        return manager == null ? indicesName : manager.resolveName(indicesName);
+    }
+
+    /**
+     * 实际索引属于已注册的模板时，在首次提交前按模板创建
+     */
+    void ensureWriteIndex(String index) throws IOException {
+        IndexManager manager = indexManagerRef.get();
+        if (manager != null) {
+            manager.ensureCreated(index);
+        }
+    }
+
+    /**
+     * @return 是否注册了索引模板
+     */
+    boolean hasIndexTemplates() {
+        IndexManager manager = indexManagerRef.get();
+        return manager != null && manager.hasTemplates();
+    }
+
+    private IndexManager indexManager() {
+        IndexManager manager = indexManagerRef.get();
+        if (manager == null) {
+            indexManagerRef.compareAndSet(null, new IndexManager(this));
+            manager = indexManagerRef.get();
+        }
+        return manager;
+    }
+
+    /**
+     * 批量操作，失败条目中可重试的部分按指数退避重新提交，直到全部成功或超出重试预算。
+     * 请求整体失败时按状态码判断是否重试，连接失败视为可重试，超出重试预算后未成功的操作记为失败条目，
+     * 只有首次请求即因不可重试的原因整体失败时抛出异常
+     *
+     * @param operations  批量操作
+     * @param retryPolicy 重试策略
+     * @return 带重试的批量操作结果
+     */
+    public BulkResult bulk(List<BulkOperation> operations, BulkRetryPolicy retryPolicy) throws IOException {
+        BulkResponseItem[] items = new BulkResponseItem[operations.size()];
+        List<BulkResponseItem> retriedSuccesses = new ArrayList<>();
+        List<BulkResponseItem> failures = new ArrayList<>();
+        int succeeded = 0;
+        long took = 0;
+        long start = System.currentTimeMillis();
+        List<Integer> pending = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            pending.add(i);
+        }
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            List<BulkOperation> batch = new ArrayList<>(pending.size());
+            for (Integer index : pending) {
+                batch.add(operations.get(index));
+            }
+            List<Integer> retry = new ArrayList<>();
+            try {
+                BulkResponse response = bulk(batch);
+                took += response.took();
+                List<BulkResponseItem> responseItems = response.items();
+                for (int i = 0; i < responseItems.size(); i++) {
+                    BulkResponseItem item = responseItems.get(i);
+                    int index = pending.get(i);
+                    items[index] = item;
+                    if (item.error() == null) {
+                        if (attempt == 1) {
+                            succeeded++;
+                        } else {
+                            retriedSuccesses.add(item);
+                        }
+                    } else if (retryPolicy.isRetryable(item)) {
+                        retry.add(index);
+                    } else {
+                        failures.add(item);
+                    }
+                }
+            } catch (IOException | ElasticsearchException e) {
+                // 连接失败、网关超时等没有返回条目的失败按条目记录，超出重试预算时与已成功的条目一起返回
+                for (Integer index : pending) {
+                    items[index] = ShardRouter.failedItem(operations.get(index), indicesName, e);
+                }
+                if (pending.isEmpty() || !retryPolicy.isRetryable(items[pending.get(0)].status())) {
+                    if (attempt == 1) {
+                        throw e;
+                    }
+                    for (Integer index : pending) {
+                        failures.add(items[index]);
+                    }
+                    break;
+                }
+                retry = pending;
+            }
+            if (retry.isEmpty()) {
+                break;
+            }
+            if (!canRetry(retryPolicy, attempt, start)) {
+                for (Integer index : retry) {
+                    failures.add(items[index]);
+                }
+                break;
+            }
+            if (metrics != null) {
+                metrics.onBulkRetry(attempt, retry.size());
+            }
+            try {
+                Thread.sleep(retryPolicy.backoffMillis(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("bulk 重试等待被中断", e);
+            }
+            pending = retry;
+        }
+        return new BulkResult(Arrays.asList(items), succeeded, retriedSuccesses, failures, attempt, took);
+    }
+
+    private static boolean canRetry(BulkRetryPolicy retryPolicy, int attempt, long start) {
+        if (attempt >= retryPolicy.getMaxAttempts()) {
+            return false;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        return retryPolicy.getMaxElapsedMillis() <= 0
+                || elapsed + retryPolicy.backoffMillis(attempt) <= retryPolicy.getMaxElapsedMillis();
+    }
+
+    /**
+     * 创建批量写入器，逐条添加文档，按文档数、字节数和时间间隔自动分批提交，使用完毕后需关闭
+     * <pre>
+     * try (BulkIngester&lt;Person&gt; ingester = util.bulkIngester(INDEX_NAME, e -&gt; e
+     *         .maxActions(5000)
+     *         .maxConcurrentRequests(4))) {
+     *     ingester.add(person, id);
+     * }
+     * </pre>
+     *
+     * @param indicesName 索引名
+     * @param fn          写入器配置
+     * @return 批量写入器
+     */
+    public <T> BulkIngester<T> bulkIngester(String indicesName, Function<BulkIngesterConfig.BulkIngesterConfigBuilder, BulkIngesterConfig.BulkIngesterConfigBuilder> fn) {
+        return new BulkIngester<>(this, indicesName, fn.apply(BulkIngesterConfig.builder()).build());
+    }
+
+    /**
+     * 创建批量写入器，使用默认配置
+     *
+     * @param indicesName 索引名
+     * @return 批量写入器
+     */
+    public <T> BulkIngester<T> bulkIngester(String indicesName) {
+        return bulkIngester(indicesName, Function.identity());
+    }
+
+    /**
+     * 创建批量写入器，使用默认索引
+     *
+     * @param fn 写入器配置
+     * @return 批量写入器
+     */
+    public <T> BulkIngester<T> bulkIngester(Function<BulkIngesterConfig.BulkIngesterConfigBuilder, BulkIngesterConfig.BulkIngesterConfigBuilder> fn) {
+        return bulkIngester(indicesName, fn);
+    }
+
+    /**
+     * 批量保存文档
+     *
+     * @param list 批量保存的文档集合
+     * @return 批量操作返回对象
+     */
+    public <T> BulkResponse save(List<T> list) throws IOException {
+        return save(indicesName, list, Arrays.asList(new String[list.size()]));
+    }
+
+    /**
+     * 批量保存文档
+     *
+     * @param list 批量保存的文档集合
+     * @param ids  批量保存的 ID 集合
+     * @return 批量操作返回对象
+     */
+    public <T> BulkResponse save(List<T> list, List<String> ids) throws IOException {
+        return save(indicesName, list, ids);
+    }
+
+    /**
+     * 批量保存文档，仅重试失败且可重试的条目
+     *
+     * @param list        批量保存的文档集合
+     * @param ids         批量保存的 ID 集合
+     * @param retryPolicy 重试策略
+     * @return 带重试的批量操作结果
+     */
+    public <T> BulkResult save(List<T> list, List<String> ids, BulkRetryPolicy retryPolicy) throws IOException {
+        return save(indicesName, list, ids, retryPolicy);
+    }
+
+    /**
+     * 保存原始 JSON 文档，字节直接写入请求 body，不经过对象序列化
+     *
+     * @param indicesName 索引名
+     * @param json        原始 JSON 文档
+     * @param id          文档 ID，为 null 时由 ES 生成
+     * @return 文档 ID
+     */
+    public String saveRaw(String indicesName, byte[] json, String id) throws IOException {
+        return singleRaw(indicesName, json, id);
+    }
+
+    /**
+     * 保存原始 JSON 文档，从 position 到 limit 的字节直接写入请求 body，不改变 ByteBuffer 的 position
+     *
+     * @param indicesName 索引名
+     * @param json        原始 JSON 文档
+     * @param id          文档 ID，为 null 时由 ES 生成
+     * @return 文档 ID
+     */
+    public String saveRaw(String indicesName, ByteBuffer json, String id) throws IOException {
+        return singleRaw(indicesName, json, id);
+    }
+
+    /**
+     * 保存原始 JSON 文档，不经过对象序列化
+     *
+     * @param indicesName 索引名
+     * @param json        原始 JSON 文档
+     * @param id          文档 ID，为 null 时由 ES 生成
+     * @return 文档 ID
+     */
+    public String saveRaw(String indicesName, String json, String id) throws IOException {
+        return singleRaw(indicesName, json, id);
+    }
+
+    /**
+     * 批量保存原始 JSON 文档，字节直接写入复用的 NDJSON 请求 body，不经过对象序列化
+     *
+     * @param indicesName 索引名
+     * @param documents   原始 JSON 文档集合，元素可以是 byte[]、ByteBuffer 或 String
+     * @param ids         批量保存的 ID 集合，为 null 时由 ES 生成
+     * @return 批量操作返回对象
+     */
+    public BulkResponse saveRaw(String indicesName, List<?> documents, List<String> ids) throws IOException {
+        if (documents == null || documents.isEmpty()) {
+            return null;
+        }
+        if (ids != null && ids.size() != documents.size()) {
+            throw new RuntimeException("ids 集合大小和 documents 集合大小不一致，bulk 中止");
+        }
+        String index = writeIndex(indicesName);
+        NdjsonBuffer buffer = NdjsonBuffer.local();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                buffer.appendIndex(index, ids == null ? null : ids.get(i), documents.get(i));
+            }
+            return bulkRaw(buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * 批量保存原始 JSON 文档
+     *
+     * @param documents 原始 JSON 文档集合，元素可以是 byte[]、ByteBuffer 或 String
+     * @param ids       批量保存的 ID 集合，为 null 时由 ES 生成
+     * @return 批量操作返回对象
+     */
+    public BulkResponse saveRaw(List<?> documents, List<String> ids) throws IOException {
+        return saveRaw(indicesName, documents, ids);
+    }
+
+    /**
+     * 批量局部更新，每个文档可以单独指定 doc、upsert、脚本、detect_noop 和 retry_on_conflict，
+     * 请求 body 直接写入复用的 NDJSON 缓冲区
+     * <pre>
+     * UpdateResult result = util.bulkUpdate(INDEX_NAME, ids.stream()
+     *         .map(id -&gt; PartialUpdate.of(u -&gt; u
+     *                 .id(id)
+     *                 .script("ctx._source.age += params.n")
+     *                 .scriptParams(ImmutableMap.of("n", 1))
+     *                 .retryOnConflict(3)))
+     *         .collect(Collectors.toList()));
+     * </pre>
+     *
+     * @param indicesName 索引名，局部更新中指定了索引名时以局部更新为准
+     * @param updates     局部更新集合
+     * @return 批量更新结果，区分更新、新建和未变化的文档
+     */
+    public UpdateResult bulkUpdate(String indicesName, List<PartialUpdate> updates) throws IOException {
+        if (updates == null || updates.isEmpty()) {
+            return null;
+        }
+        NdjsonBuffer buffer = NdjsonBuffer.local();
+        BulkResponse response;
+        try {
+            for (PartialUpdate update : updates) {
+                appendUpdate(buffer, indicesName, update);
+            }
+            response = bulkRaw(buffer);
+        } finally {
+            buffer.release();
+        }
+        return updateResult(response);
+    }
+
+    /**
+     * 批量局部更新
+     *
+     * @param updates 局部更新集合
+     * @return 批量更新结果
+     */
+    public UpdateResult bulkUpdate(List<PartialUpdate> updates) throws IOException {
+        return bulkUpdate(indicesName, updates);
+    }
+
+    /**
+     * 按 ID 批量合并字段
+     *
+     * @param indicesName 索引名
+     * @param docs        文档 ID 到要合并的字段，值可以是 Map、对象或原始 JSON
+     * @param docAsUpsert 文档不存在时是否把字段作为新文档写入
+     * @return 批量更新结果
+     */
+    public UpdateResult bulkUpdate(String indicesName, Map<String, ?> docs, boolean docAsUpsert) throws IOException {
+        List<PartialUpdate> updates = new ArrayList<>(docs.size());
+        for (Map.Entry<String, ?> entry : docs.entrySet()) {
+            updates.add(PartialUpdate.builder().id(entry.getKey()).doc(entry.getValue()).docAsUpsert(docAsUpsert).build());
+        }
+        return bulkUpdate(indicesName, updates);
+    }
+
+    void appendUpdate(NdjsonBuffer buffer, String indicesName, PartialUpdate update) {
+        if (update.getId() == null) {
+            throw new IllegalArgumentException("局部更新需要指定文档 ID");
+        }
+        if ((update.getDoc() == null) == (update.getScript() == null)) {
+            throw new IllegalArgumentException("局部更新需要且只能指定 doc 和 script 之一: " + update.getId());
+        }
+        StringBuilder extra = new StringBuilder();
+        if (update.getRetryOnConflict() != null) {
+            extra.append("\"retry_on_conflict\":").append(update.getRetryOnConflict());
+        }
+        if (update.getRouting() != null) {
+            if (extra.length() > 0) {
+                extra.append(',');
+            }
+            extra.append("\"routing\":");
+            NdjsonBuffer.appendQuoted(extra, update.getRouting());
+        }
+        buffer.appendActionLine("update", update.getIndex() != null ? update.getIndex() : indicesName, update.getId(),
+                extra.length() > 0 ? extra.toString() : null);
+        if (update.getDoc() != null) {
+            buffer.appendJson("{\"doc\":");
+            buffer.appendJson(rawJson(update.getDoc()));
+            if (update.isDocAsUpsert()) {
+                buffer.appendJson(",\"doc_as_upsert\":true");
+            }
+        } else {
+            StringBuilder script = new StringBuilder("{\"script\":{\"source\":");
+            NdjsonBuffer.appendQuoted(script, update.getScript());
+            script.append(",\"lang\":\"painless\"");
+            if (update.getScriptParams() != null) {
+                script.append(",\"params\":").append(serialize(update.getScriptParams()));
+            }
+            script.append('}');
+            if (update.isScriptedUpsert()) {
+                script.append(",\"scripted_upsert\":true");
+            }
+            buffer.appendJson(script);
+        }
+        if (update.getUpsert() != null) {
+            buffer.appendJson(",\"upsert\":");
+            buffer.appendJson(rawJson(update.getUpsert()));
+        }
+        if (update.getDetectNoop() != null) {
+            buffer.appendJson(",\"detect_noop\":" + update.getDetectNoop());
+        }
+        buffer.appendJson("}");
+        buffer.endLine();
+    }
+
+    private static UpdateResult updateResult(BulkResponse response) {
+        int updated = 0;
+        int created = 0;
+        int noops = 0;
+        int deleted = 0;
+        List<BulkResponseItem> failures = new ArrayList<>();
+        for (BulkResponseItem item : response.items()) {
+            if (item.error() != null) {
+                failures.add(item);
+            } else if ("updated".equals(item.result())) {
+                updated++;
+            } else if ("created".equals(item.result())) {
+                created++;
+            } else if ("noop".equals(item.result())) {
+                noops++;
+            } else if ("deleted".equals(item.result())) {
+                deleted++;
+            }
+        }
+        return new UpdateResult(response.items(), updated, created, noops, deleted, failures, response.took());
+    }
+
+    /**
+     * byte[]、ByteBuffer、CharSequence 视为原始 JSON 原样返回，其它对象使用客户端的 JSON 映射器序列化
+     */
+    Object rawJson(Object value) {
+        if (value instanceof byte[] || value instanceof ByteBuffer || value instanceof CharSequence) {
+            return value;
+        }
+        return serialize(value);
+    }
+
+    private String serialize(Object value) {
+        JsonpMapper mapper = getJsonpMapper();
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(writer)) {
+            mapper.serialize(value, generator);
+        }
+        return writer.toString();
+    }
+
+    private String singleRaw(String indicesName, Object json, String id) throws IOException {
+        String index = writeIndex(indicesName);
+        NdjsonBuffer buffer = NdjsonBuffer.local();
+        BulkResponse response;
+        try {
+            buffer.appendIndex(index, id, json);
+            response = bulkRaw(buffer);
+        } finally {
+            buffer.release();
+        }
+        BulkResponseItem item = response.items().get(0);
+        if (item.error() != null) {
+            throw new IOException(item.error().type() + ": " + item.error().reason());
+        }
+        return item.id();
+    }
+
+    /**
+     * 通过底层 REST 客户端发送 NDJSON body，使用客户端的 JSON 映射器解析返回
+     */
+    BulkResponse bulkRaw(NdjsonBuffer buffer) throws IOException {
+        if (!cachesEnabled()) {
+            return bulkRawRequest(buffer);
+        }
+        BulkResponse response;
+        try {
+            response = bulkRawRequest(buffer);
+        } catch (IOException | RuntimeException e) {
+            afterRawBulk(null);
+            throw e;
+        }
+        afterRawBulk(response);
+        return response;
+    }
+
+    private BulkResponse bulkRawRequest(NdjsonBuffer buffer) throws IOException {
+        return timed(EsMetrics.BULK, () -> {
+            Request request = new Request("POST", "/_bulk");
+            request.setEntity(buffer.toEntity());
+            Response response = getRestClient().performRequest(request);
+            JsonpMapper mapper = getJsonpMapper();
+            try (InputStream is = response.getEntity().getContent();
+                 JsonParser parser = mapper.jsonProvider().createParser(is)) {
+                return BulkResponse._DESERIALIZER.deserialize(parser, mapper);
+            }
+        });
+    }
+
+    /**
+     * 流式批量保存文档，逐条读取迭代器并按批提交，内存占用与输入总量无关
+     *
+     * @param indicesName 索引名
+     * @param iterator    文档迭代器
+     * @param idExtractor 文档 ID 提取函数，为 null 或返回 null 时由 ES 生成 ID
+     * @param fn          分批配置，单批大小由 maxActions、maxBytes 控制
+     * @param progress    每个批次完成后的进度回调，可以为 null
+     * @return 最终进度
+     */
+    public <T> BulkProgress save(String indicesName, Iterator<T> iterator, Function<T, String> idExtractor,
+                                 Function<BulkIngesterConfig.BulkIngesterConfigBuilder, BulkIngesterConfig.BulkIngesterConfigBuilder> fn,
+                                 Consumer<BulkProgress> progress) {
+        BulkIngesterConfig config = fn.apply(BulkIngesterConfig.builder()).build();
+        BulkListener delegate = config.getListener();
+        long start = System.currentTimeMillis();
+        AtomicReference<BulkProgress> current = new AtomicReference<>(new BulkProgress(0, 0, 0, 0, 0, null));
+        BulkListener listener = new BulkListener() {
+            @Override
+            public void beforeBulk(long executionId, int docs, long bytes) {
+                if (delegate != null) {
+                    delegate.beforeBulk(executionId, docs, bytes);
+                }
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkStats stats, BulkResponse response) {
+                if (delegate != null) {
+                    delegate.afterBulk(executionId, stats, response);
+                }
+                onProgress(stats);
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkStats stats, Throwable failure) {
+                if (delegate != null) {
+                    delegate.afterBulk(executionId, stats, failure);
+                }
+                onProgress(stats);
+            }
+
+            private void onProgress(BulkStats stats) {
+                BulkProgress next = current.updateAndGet(p -> new BulkProgress(
+                        p.getRequests() + 1,
+                        p.getDocs() + stats.getDocs(),
+                        p.getBytes() + stats.getBytes(),
+                        p.getFailures() + stats.getFailures(),
+                        System.currentTimeMillis() - start,
+                        stats));
+                if (progress != null) {
+                    progress.accept(next);
+                }
+            }
+        };
+        try (BulkIngester<T> ingester = new BulkIngester<>(this, indicesName, config.toBuilder().listener(listener).build())) {
+            while (iterator.hasNext()) {
+                T document = iterator.next();
+                ingester.add(document, idExtractor == null ? null : idExtractor.apply(document));
+            }
+        }
+        BulkProgress last = current.get();
+        return new BulkProgress(last.getRequests(), last.getDocs(), last.getBytes(), last.getFailures(),
+                System.currentTimeMillis() - start, last.getLast());
+    }
+
+    /**
+     * 流式批量保存文档，使用默认分批配置
+     *
+     * @param indicesName 索引名
+     * @param iterator    文档迭代器
+     * @param idExtractor 文档 ID 提取函数，为 null 或返回 null 时由 ES 生成 ID
+     * @param progress    每个批次完成后的进度回调，可以为 null
+     * @return 最终进度
+     */
+    public <T> BulkProgress save(String indicesName, Iterator<T> iterator, Function<T, String> idExtractor, Consumer<BulkProgress> progress) {
+        return save(indicesName, iterator, idExtractor, Function.identity(), progress);
+    }
+
+    /**
+     * 流式批量保存文档，流由调用方负责关闭
+     *
+     * @param indicesName 索引名
+     * @param stream      文档流
+     * @param idExtractor 文档 ID 提取函数，为 null 或返回 null 时由 ES 生成 ID
+     * @param fn          分批配置，单批大小由 maxActions、maxBytes 控制
+     * @param progress    每个批次完成后的进度回调，可以为 null
+     * @return 最终进度
+     */
+    public <T> BulkProgress save(String indicesName, Stream<T> stream, Function<T, String> idExtractor,
+                                 Function<BulkIngesterConfig.BulkIngesterConfigBuilder, BulkIngesterConfig.BulkIngesterConfigBuilder> fn,
+                                 Consumer<BulkProgress> progress) {
+        return save(indicesName, stream.iterator(), idExtractor, fn, progress);
+    }
+
+    /**
+     * 流式批量保存文档，使用默认分批配置，流由调用方负责关闭
+     *
+     * @param indicesName 索引名
+     * @param stream      文档流
+     * @param idExtractor 文档 ID 提取函数，为 null 或返回 null 时由 ES 生成 ID
+     * @param progress    每个批次完成后的进度回调，可以为 null
+     * @return 最终进度
+     */
+    public <T> BulkProgress save(String indicesName, Stream<T> stream, Function<T, String> idExtractor, Consumer<BulkProgress> progress) {
+        return save(indicesName, stream.iterator(), idExtractor, Function.identity(), progress);
+    }
+
+    /**
+     * 流式批量保存文档，使用默认索引和默认分批配置
+     *
+     * @param iterator    文档迭代器
+     * @param idExtractor 文档 ID 提取函数，为 null 或返回 null 时由 ES 生成 ID
+     * @param progress    每个批次完成后的进度回调，可以为 null
+     * @return 最终进度
+     */
+    public <T> BulkProgress save(Iterator<T> iterator, Function<T, String> idExtractor, Consumer<BulkProgress> progress) {
+        return save(indicesName, iterator, idExtractor, progress);
+    }
+
+    /**
+     * 流式批量保存文档，使用默认索引和默认分批配置，流由调用方负责关闭
+     *
+     * @param stream      文档流
+     * @param idExtractor 文档 ID 提取函数，为 null 或返回 null 时由 ES 生成 ID
+     * @param progress    每个批次完成后的进度回调，可以为 null
+     * @return 最终进度
+     */
+    public <T> BulkProgress save(Stream<T> stream, Function<T, String> idExtractor, Consumer<BulkProgress> progress) {
+        return save(indicesName, stream, idExtractor, progress);
+    }
+
+    /**
+     * 通过 ID 检索文档
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     * @param tClass      返回的对象类型
+     * @return 文档对象，开启读缓存且未配置 copier 时与缓存共享同一个对象，不能修改
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getById(String indicesName, String id, Class<T> tClass) throws IOException {
+        DocumentCache cache = documentCache();
+        if (cache == null) {
+            GetResponse<T> response = timed(EsMetrics.GET, () -> getClient().get((gr -> gr.index(indicesName).id(id)), tClass));
+            return response.source();
+        }
+        Object cached = cache.get(indicesName, id, tClass);
+        if (cached != null) {
+            return (T) cached;
+        }
+        long epoch = cache.epoch();
+        GetResponse<T> response = timed(EsMetrics.GET, () -> getClient().get((gr -> gr.index(indicesName).id(id)), tClass));
+        cache.put(indicesName, id, tClass, response.source(), response.seqNo(), response.primaryTerm(), epoch);
+        return (T) cache.copy(response.source());
+    }
+
+    /**
+     * 通过 ID 检索文档
+     *
+     * @param id     文档 ID
+     * @param tClass 返回的对象类型
+     * @return 文档对象
+     */
+    public <T> T getById(String id, Class<T> tClass) throws IOException {
+        return getById(indicesName, id, tClass);
+    }
+
+    /**
+     * 通过 ID 批量检索文档，基于 _mget，ID 数量超过 mgetChunkSize 时拆分为多个 _mget 并发请求
+     *
+     * @param indicesName 索引名
+     * @param ids         文档 ID 集合
+     * @param tClass      返回的对象类型
+     * @param includes    返回的字段，为 null 或空时返回全部字段
+     * @param excludes    排除的字段，可以为 null
+     * @return 按输入顺序排列的 ID 与文档对象，不存在的文档不包含在结果中，value 为 null 表示文档没有 _source
+     */
+    public <T> Map<String, T> getByIds(String indicesName, Collection<String> ids, Class<T> tClass, List<String> includes, List<String> excludes) throws IOException {
+        List<String> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<CompletableFuture<MgetResponse<T>>> futures = new ArrayList<>();
+        int chunkSize = Math.max(1, mgetChunkSize);
+        for (int from = 0; from < idList.size(); from += chunkSize) {
+            List<String> chunk = idList.subList(from, Math.min(from + chunkSize, idList.size()));
+            futures.add(async(EsMetrics.MGET, c -> c.mget(m -> {
+                m.index(indicesName).ids(chunk);
+                if (includes != null && !includes.isEmpty()) {
+                    m.sourceIncludes(includes);
+                }
+                if (excludes != null && !excludes.isEmpty()) {
+                    m.sourceExcludes(excludes);
+                }
+                return m;
+            }, tClass)));
+        }
+        Map<String, T> result = new LinkedHashMap<>();
+        for (CompletableFuture<MgetResponse<T>> future : futures) {
+            for (MultiGetResponseItem<T> item : await(future).docs()) {
+                if (item.isFailure()) {
+                    throw new IOException("_mget 失败，id: " + item.failure().id() + "，原因: " + item.failure().error().reason());
+                }
+                GetResult<T> getResult = item.result();
+                if (getResult.found()) {
+                    result.put(getResult.id(), getResult.source());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 通过 ID 批量检索文档
+     *
+     * @param indicesName 索引名
+     * @param ids         文档 ID 集合
+     * @param tClass      返回的对象类型
+     * @return 按输入顺序排列的 ID 与文档对象，不存在的文档不包含在结果中，value 为 null 表示文档没有 _source
+     */
+    public <T> Map<String, T> getByIds(String indicesName, Collection<String> ids, Class<T> tClass) throws IOException {
+        return getByIds(indicesName, ids, tClass, null, null);
+    }
+
+    /**
+     * 通过 ID 批量检索文档
+     *
+     * @param ids    文档 ID 集合
+     * @param tClass 返回的对象类型
+     * @return 按输入顺序排列的 ID 与文档对象，不存在的文档不包含在结果中，value 为 null 表示文档没有 _source
+     */
+    public <T> Map<String, T> getByIds(Collection<String> ids, Class<T> tClass) throws IOException {
+        return getByIds(indicesName, ids, tClass);
+    }
+
+    /**
+     * <h3>通过条件检索文档</h3>
+     * <br/>
+     * <br/>
+     * q 查询，仅返回 name：
+     * <pre>
+     * SearchRequest searchRequest = SearchRequest.of(sr -> sr
+     *     .index(INDEX_NAME)
+     *     .q("python")
+     *     .source(s -> s
+     *         .filter(f -> f
+     *             .includes("name")
+     *         )
+     *     )
+     * );
+     * </pre>
+     * term 查询，返回字段排除 id：
+     * <pre>
+     * SearchRequest searchRequest = SearchRequest.of(sr -> sr
+     *     .index(INDEX_NAME)
+     *     .query(q -> q
+     *         .term(t -> t
+     *             .field("name")
+     *             .value("张三")
+     *         )
+     *     )
+     *     .source(s -> s
+     *         .filter(f -> f
+     *             .excludes("id")
+     *         )
+     *     )
+     * );
+     * </pre>
+     * 多字段查询
+     * <pre>
+     * SearchRequest searchRequest = SearchRequest.of(sr -> sr
+     *     .index(INDEX_NAME)
+     *     .query(q -> q
+     *         .multiMatch(m -> m
+     *             .fields("name", "city", "description")
+     *             .query("武汉 python")
+     *         )
+     *     )
+     *     .source(s -> s
+     *         .filter(f -> f
+     *             .excludes("id")
+     *         )
+     *     )
+     * );
+     * </pre>
+     *
+     * @param searchRequest 检索条件
+     * @param tClass        返回的对象类型
+     * @return 文档对象集合
+     */
+    public <T> List<T> search(SearchRequest searchRequest, Class<T> tClass) throws IOException {
+        SearchCache cache = searchCache();
+        if (cache == null || !cacheable(searchRequest)) {
+            return doSearch(searchRequest, tClass);
+        }
+        return cache.get(searchCacheKey(searchRequest, tClass), searchRequest.index(), () -> doSearch(searchRequest, tClass));
+    }
+
+    private <T> List<T> doSearch(SearchRequest searchRequest, Class<T> tClass) throws IOException {
+        SearchResponse<T> response = timed(EsMetrics.SEARCH, () -> getClient().search(searchRequest, tClass));
+        return response.hits().hits().stream().map(Hit::source).collect(Collectors.toList());
+    }
+
+    /**
+     * scroll 和 point in time 检索的结果与上下文绑定，不缓存
+     */
+    private static boolean cacheable(SearchRequest searchRequest) {
+        return searchRequest.scroll() == null && searchRequest.pit() == null;
+    }
+
+    /**
+     * 检索结果缓存的 key，请求 body 按字段固定顺序序列化，与构建时的调用顺序无关
+     */
+    private String searchCacheKey(SearchRequest searchRequest, Class<?> tClass) {
+        return String.join(",", searchRequest.index()) + '\n'
+                + tClass.getName() + '\n'
+                + searchRequest.q() + '\n'
+                + searchRequest.routing() + '\n'
+                + toJson(searchRequest);
+    }
+
+    /**
+     * 刷新索引，使之前的写入可以被检索到，同时失效涉及该索引的检索结果缓存
+     *
+     * @param indicesName 索引名
+     */
+    public void refresh(String indicesName) throws IOException {
+        getClient().indices().refresh(r -> r.index(indicesName));
+        SearchCache cache = searchCache();
+        if (cache != null) {
+            cache.invalidate(indicesName);
+        }
+    }
+
+    /**
+     * 刷新索引
+     */
+    public void refresh() throws IOException {
+        refresh(indicesName);
+    }
+
+    /**
+     * 进入批量导入模式，关闭索引的自动 refresh 并去掉副本，关闭返回的对象时恢复原有设置
+     *
+     * @param indicesName 索引名，可以是别名或通配符，涉及的每个索引分别恢复
+     * @param fn          导入配置
+     * @return 批量导入模式，使用完毕后需关闭
+     */
+    public BulkLoadScope bulkLoad(String indicesName, Function<BulkLoadOptions.BulkLoadOptionsBuilder, BulkLoadOptions.BulkLoadOptionsBuilder> fn) throws IOException {
+        return new BulkLoadScope(this, indicesName, fn.apply(BulkLoadOptions.builder()).build());
+    }
+
+    /**
+     * 进入批量导入模式，使用默认配置
+     *
+     * @return 批量导入模式，使用完毕后需关闭
+     */
+    public BulkLoadScope bulkLoad() throws IOException {
+        return bulkLoad(indicesName, Function.identity());
+    }
+
+    /**
+     * 服务端复制索引，提交 _reindex 任务后轮询进度，完成且没有失败时原子切换别名
+     * <pre>
+     * util.indicesCreateWithJson("person_v2", json);
+     * TaskProgress progress = util.reindex("person_v1", "person_v2", o -&gt; o
+     *         .requestsPerSecond(5000)
+     *         .alias("person")
+     *         .progress(p -&gt; log.info(p.processed() + "/" + p.getTotal())));
+     * </pre>
+     *
+     * @param source 源索引
+     * @param dest   目标索引，需要提前按新的 mapping 创建
+     * @param fn     复制配置
+     * @return 最终进度
+     */
+    public TaskProgress reindex(String source, String dest, Function<ReindexOptions.ReindexOptionsBuilder, ReindexOptions.ReindexOptionsBuilder> fn) throws IOException {
+        return Reindexer.server(this, source, dest, fn.apply(ReindexOptions.builder()).build());
+    }
+
+    /**
+     * 客户端复制索引，并行切片检索源索引，转换后通过批量写入器写入目标索引，完成且没有失败时原子切换别名
+     *
+     * @param source    源索引
+     * @param dest      目标索引，需要提前按新的 mapping 创建
+     * @param tClass    源文档类型
+     * @param transform 文档转换函数，返回 null 的文档不写入，为 null 时原样写入
+     * @param fn        复制配置
+     * @return 最终进度
+     */
+    public <T> TaskProgress reindex(String source, String dest, Class<T> tClass, Function<T, ?> transform,
+                                    Function<ReindexOptions.ReindexOptionsBuilder, ReindexOptions.ReindexOptionsBuilder> fn) throws IOException {
+        return Reindexer.client(this, source, dest, tClass, transform, fn.apply(ReindexOptions.builder()).build());
+    }
+
+    /**
+     * 提交服务端 _reindex 任务，不等待完成，也不切换别名，通过返回的任务查询进度或取消
+     *
+     * @param source 源索引
+     * @param dest   目标索引
+     * @param fn     复制配置
+     * @return 服务端任务
+     */
+    public EsTask startReindex(String source, String dest, Function<ReindexOptions.ReindexOptionsBuilder, ReindexOptions.ReindexOptionsBuilder> fn) throws IOException {
+        return Reindexer.start(this, source, dest, fn.apply(ReindexOptions.builder()).build());
+    }
+
+    /**
+     * 按条件删除文档，以服务端切片任务执行并轮询进度，文档 ID 不经过客户端
+     * <pre>
+     * TaskProgress progress = util.deleteByQuery(INDEX_NAME, o -&gt; o
+     *         .query(q -&gt; q.range(r -&gt; r.field("age").lt(JsonData.of(18))))
+     *         .requestsPerSecond(2000)
+     *         .proceedOnConflicts(true));
+     * </pre>
+     *
+     * @param indicesName 索引名
+     * @param fn          任务配置，必须指定 query
+     * @return 最终进度
+     */
+    public TaskProgress deleteByQuery(String indicesName, Function<ByQueryOptions.ByQueryOptionsBuilder, ByQueryOptions.ByQueryOptionsBuilder> fn) throws IOException {
+        return ByQuery.run(this, ByQuery.DELETE, indicesName, fn.apply(ByQueryOptions.builder()).build());
+    }
+
+    /**
+     * 按条件删除文档，以服务端切片任务执行并轮询进度
+     *
+     * @param fn 任务配置，必须指定 query
+     * @return 最终进度
+     */
+    public TaskProgress deleteByQuery(Function<ByQueryOptions.ByQueryOptionsBuilder, ByQueryOptions.ByQueryOptionsBuilder> fn) throws IOException {
+        return deleteByQuery(indicesName, fn);
+    }
+
+    /**
+     * 提交 _delete_by_query 任务，不等待完成，通过返回的任务查询进度、调整限速或取消。
+     * 开启缓存时提交后立即失效该索引的缓存，任务执行期间读到的结果要在查询到任务结束后才会再次失效
+     *
+     * @param indicesName 索引名
+     * @param fn          任务配置，必须指定 query
+     * @return 服务端任务
+     */
+    public EsTask startDeleteByQuery(String indicesName, Function<ByQueryOptions.ByQueryOptionsBuilder, ByQueryOptions.ByQueryOptionsBuilder> fn) throws IOException {
+        return ByQuery.start(this, ByQuery.DELETE, indicesName, fn.apply(ByQueryOptions.builder()).build());
+    }
+
+    /**
+     * 按条件更新文档，以服务端切片任务执行并轮询进度，文档 ID 不经过客户端
+     * <pre>
+     * TaskProgress progress = util.updateByQuery(INDEX_NAME, o -&gt; o
+     *         .query(q -&gt; q.term(t -&gt; t.field("city").value("武汉")))
+     *         .script("ctx._source.age += params.delta")
+     *         .scriptParams(ImmutableMap.of("delta", 1)));
+     * </pre>
+     *
+     * @param indicesName 索引名
+     * @param fn          任务配置
+     * @return 最终进度
+     */
+    public TaskProgress updateByQuery(String indicesName, Function<ByQueryOptions.ByQueryOptionsBuilder, ByQueryOptions.ByQueryOptionsBuilder> fn) throws IOException {
+        return ByQuery.run(this, ByQuery.UPDATE, indicesName, fn.apply(ByQueryOptions.builder()).build());
+    }
+
+    /**
+     * 按条件更新文档，以服务端切片任务执行并轮询进度
+     *
+     * @param fn 任务配置
+     * @return 最终进度
+     */
+    public TaskProgress updateByQuery(Function<ByQueryOptions.ByQueryOptionsBuilder, ByQueryOptions.ByQueryOptionsBuilder> fn) throws IOException {
+        return updateByQuery(indicesName, fn);
+    }
+
+    /**
+     * 提交 _update_by_query 任务，不等待完成，通过返回的任务查询进度、调整限速或取消。
+     * 开启缓存时提交后立即失效该索引的缓存，任务执行期间读到的结果要在查询到任务结束后才会再次失效
+     *
+     * @param indicesName 索引名
+     * @param fn          任务配置
+     * @return 服务端任务
+     */
+    public EsTask startUpdateByQuery(String indicesName, Function<ByQueryOptions.ByQueryOptionsBuilder, ByQueryOptions.ByQueryOptionsBuilder> fn) throws IOException {
+        return ByQuery.start(this, ByQuery.UPDATE, indicesName, fn.apply(ByQueryOptions.builder()).build());
+    }
+
+    /**
+     * 在一个 _aliases 请求中把别名从原来的索引移到目标索引，切换过程中别名始终可用
+     *
+     * @param alias            别名
+     * @param indicesName      目标索引
+     * @param deleteOldIndices 是否同时删除别名原来指向的索引，别名与已有索引同名时必须为 true
+     */
+    public void swapAlias(String alias, String indicesName, boolean deleteOldIndices) throws IOException {
+        ObjectNode body = RawJson.MAPPER.createObjectNode();
+        ArrayNode actions = body.putArray("actions");
+        List<String> current = aliasIndices(alias);
+        if (current == null) {
+            if (deleteOldIndices) {
+                actions.addObject().putObject("remove_index").put("index", alias);
+            } else {
+                throw new IOException("别名 " + alias + " 与已有索引同名，需要同时删除该索引");
+            }
+        } else {
+            for (String index : current) {
+                if (index.equals(indicesName)) {
+                    continue;
+                }
+                if (deleteOldIndices) {
+                    actions.addObject().putObject("remove_index").put("index", index);
+                } else {
+                    ObjectNode remove = actions.addObject().putObject("remove");
+                    remove.put("index", index);
+                    remove.put("alias", alias);
+                }
+            }
+        }
+        ObjectNode add = actions.addObject().putObject("add");
+        add.put("index", indicesName);
+        add.put("alias", alias);
+        performJson("POST", "/_aliases", null, body.toString());
+        invalidateShardRouting(alias);
+        invalidateIndexCache(alias);
+        if (deleteOldIndices && current != null) {
+            current.forEach(this::invalidateIndexCache);
+        }
+        SearchCache cache = searchCache();
+        if (cache != null) {
+            cache.invalidate(null);
+        }
+    }
+
+    /**
+     * @return 别名指向的索引，别名不存在时为空集合，存在同名索引时为 null
+     */
+    private List<String> aliasIndices(String alias) throws IOException {
+        try {
+            List<String> indices = new ArrayList<>();
+            performJson("GET", "/_alias/" + alias, null, null).fieldNames().forEachRemaining(indices::add);
+            return indices;
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+                throw e;
+            }
+            return indicesExist(alias) ? null : Collections.emptyList();
+        }
+    }
+
+    /**
+     * 通过底层 REST 客户端发送 JSON 请求，用于类型化客户端未覆盖或不便使用的接口
+     *
+     * @param body 请求 body，可以为 null
+     * @return 解析后的返回 body
+     */
+    JsonNode performJson(String method, String endpoint, Map<String, String> params, String body) throws IOException {
+        Request request = new Request(method, endpoint);
+        if (params != null) {
+            request.addParameters(params);
+        }
+        if (body != null) {
+            request.setJsonEntity(body);
+        }
+        Response response = getRestClient().performRequest(request);
+        if (response.getEntity() == null) {
+            return MissingNode.getInstance();
+        }
+        try (InputStream is = response.getEntity().getContent()) {
+            return RawJson.MAPPER.readTree(is);
+        }
+    }
+
+    /**
+     * 通过条件检索文档，返回原始命中记录，_source 保持为返回报文中的字节切片，字段在访问时才解析，适合原样转发检索结果
+     *
+     * @param indicesName   索引名，为 null 时使用检索条件中的索引
+     * @param searchRequest 检索条件，仅支持 body 中的条件及 q 参数
+     * @return 原始检索结果
+     */
+    public RawSearchResponse searchRaw(String indicesName, SearchRequest searchRequest) throws IOException {
+        String index = indicesName != null ? indicesName : String.join(",", searchRequest.index());
+        Request request = new Request("POST", index.isEmpty() ? "/_search" : "/" + index + "/_search");
+        if (searchRequest.q() != null) {
+            request.addParameter("q", searchRequest.q());
+        }
+        request.setJsonEntity(toJson(searchRequest));
+        return timed(EsMetrics.SEARCH, () -> {
+            Response response = getRestClient().performRequest(request);
+            return parseRawSearchResponse(EntityUtils.toByteArray(response.getEntity()), hitJson());
+        });
+    }
+
+    /**
+     * 通过条件检索文档，返回原始命中记录
+     *
+     * @param searchRequest 检索条件，仅支持 body 中的条件及 q 参数
+     * @return 原始检索结果
+     */
+    public RawSearchResponse searchRaw(SearchRequest searchRequest) throws IOException {
+        return searchRaw(null, searchRequest);
+    }
+
+    /**
+     * 通过条件检索文档，_source 直接解析为投影对象，投影对象中不存在的字段会被忽略，建议配合 _source 过滤使用
+     *
+     * @param searchRequest 检索条件，仅支持 body 中的条件及 q 参数
+     * @param type          投影类型
+     * @return 投影对象集合
+     */
+    public <R> List<R> searchProjection(SearchRequest searchRequest, Class<R> type) throws IOException {
+        return searchRaw(searchRequest).as(type);
+    }
+
+    /**
+     * 解析命中记录 _source 使用的 ObjectMapper，配置了 JacksonJsonpMapper 时使用其 ObjectMapper，自定义模块和命名策略同样生效
+     */
+    private RawJson hitJson() {
+        JsonpMapper mapper = getJsonpMapper();
+        return RawJson.of(mapper instanceof JacksonJsonpMapper ? ((JacksonJsonpMapper) mapper).objectMapper() : null);
+    }
+
+    private static RawSearchResponse parseRawSearchResponse(byte[] bytes, RawJson json) throws IOException {
+        long took = 0;
+        long total = 0;
+        List<RawHit> hits = new ArrayList<>();
+        try (com.fasterxml.jackson.core.JsonParser parser = RawJson.FACTORY.createParser(bytes)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if ("took".equals(name)) {
+                    took = parser.getLongValue();
+                } else if ("hits".equals(name)) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String hitsField = parser.getCurrentName();
+                        JsonToken token = parser.nextToken();
+                        if ("total".equals(hitsField)) {
+                            if (token == JsonToken.START_OBJECT) {
+                                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                    String totalField = parser.getCurrentName();
+                                    parser.nextToken();
+                                    if ("value".equals(totalField)) {
+                                        total = parser.getLongValue();
+                                    }
+                                }
+                            } else {
+                                total = parser.getLongValue();
+                            }
+                        } else if ("hits".equals(hitsField)) {
+                            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                                hits.add(parseRawHit(parser, bytes, json));
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new RawSearchResponse(took, total, hits);
+    }
+
+    private static RawHit parseRawHit(com.fasterxml.jackson.core.JsonParser parser, byte[] bytes, RawJson json) throws IOException {
+        String index = null;
+        String id = null;
+        Double score = null;
+        int offset = 0;
+        int length = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("_index".equals(name)) {
+                index = parser.getText();
+            } else if ("_id".equals(name)) {
+                id = parser.getText();
+            } else if ("_score".equals(name)) {
+                score = token == JsonToken.VALUE_NULL ? null : parser.getDoubleValue();
+            } else if ("_source".equals(name)) {
+                offset = (int) parser.getTokenLocation().getByteOffset();
+                parser.skipChildren();
+                length = (int) parser.getCurrentLocation().getByteOffset() - offset;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new RawHit(index, id, score, bytes, offset, length, json);
+    }
+
+    /**
+     * 使用客户端的 JSON 映射器将请求 body 序列化为 JSON
+     */
+    String toJson(JsonpSerializable value) {
+        JsonpMapper mapper = getJsonpMapper();
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(writer)) {
+            value.serialize(generator, mapper);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * 流式检索文档，逐页拉取并在消费当前页时预取下一页，使用完毕后需关闭以释放 PIT / scroll 上下文
+     * <pre>
+     * try (SearchIterator&lt;Person&gt; it = util.searchIterator(INDEX_NAME, sr -&gt; sr
+     *         .query(q -&gt; q.term(t -&gt; t.field("city").value("武汉"))), Person.class, o -&gt; o.pageSize(500))) {
+     *     while (it.hasNext()) {
+     *         Person person = it.next();
+     *     }
+     * }
+     * </pre>
+     * 检索条件中不要指定索引名，PIT 模式下索引由 PIT 决定
+     *
+     * @param indicesName 索引名
+     * @param fn          检索条件
+     * @param tClass      返回的对象类型
+     * @param optionsFn   流式检索配置
+     * @return 文档迭代器
+     */
+    public <T> SearchIterator<T> searchIterator(String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass,
+                                                Function<ScanOptions.ScanOptionsBuilder, ScanOptions.ScanOptionsBuilder> optionsFn) {
+        return new SearchIterator<>(this, indicesName, fn, tClass, optionsFn.apply(ScanOptions.builder()).build());
+    }
+
+    /**
+     * 流式检索文档，使用默认配置
+     *
+     * @param indicesName 索引名
+     * @param fn          检索条件
+     * @param tClass      返回的对象类型
+     * @return 文档迭代器
+     */
+    public <T> SearchIterator<T> searchIterator(String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass) {
+        return searchIterator(indicesName, fn, tClass, Function.identity());
+    }
+
+    /**
+     * 流式检索文档，使用默认索引和默认配置
+     *
+     * @param fn     检索条件
+     * @param tClass 返回的对象类型
+     * @return 文档迭代器
+     */
+    public <T> SearchIterator<T> searchIterator(Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass) {
+        return searchIterator(indicesName, fn, tClass);
+    }
+
+    /**
+     * 流式检索文档，返回的流需要关闭以释放 PIT / scroll 上下文
+     * <pre>
+     * try (Stream&lt;Person&gt; stream = util.searchStream(INDEX_NAME, sr -&gt; sr.query(q -&gt; q.matchAll(m -&gt; m)), Person.class, o -&gt; o)) {
+     *     stream.forEach(System.out::println);
+     * }
+     * </pre>
+     *
+     * @param indicesName 索引名
+     * @param fn          检索条件
+     * @param tClass      返回的对象类型
+     * @param optionsFn   流式检索配置
+     * @return 文档流
+     */
+    public <T> Stream<T> searchStream(String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass,
+                                      Function<ScanOptions.ScanOptionsBuilder, ScanOptions.ScanOptionsBuilder> optionsFn) {
+        return toStream(searchIterator(indicesName, fn, tClass, optionsFn));
+    }
+
+    /**
+     * 流式检索文档，使用默认配置，返回的流需要关闭
+     *
+     * @param indicesName 索引名
+     * @param fn          检索条件
+     * @param tClass      返回的对象类型
+     * @return 文档流
+     */
+    public <T> Stream<T> searchStream(String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass) {
+        return searchStream(indicesName, fn, tClass, Function.identity());
+    }
+
+    /**
+     * 流式检索文档，使用默认索引和默认配置，返回的流需要关闭
+     *
+     * @param fn     检索条件
+     * @param tClass 返回的对象类型
+     * @return 文档流
+     */
+    public <T> Stream<T> searchStream(Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass) {
+        return searchStream(indicesName, fn, tClass);
+    }
+
+    /**
+     * 并行切片检索，按切片数拆分为多个 sliced PIT / scroll 切片并发拉取，回调在切片线程中并发执行
+     * <pre>
+     * long total = util.parallelScan(INDEX_NAME, sr -&gt; sr.query(q -&gt; q.matchAll(m -&gt; m)), Person.class,
+     *         o -&gt; o.slices(8).pageSize(2000), (slice, person) -&gt; writer.write(person));
+     * </pre>
+     *
+     * @param indicesName 索引名
+     * @param fn          检索条件
+     * @param tClass      返回的对象类型
+     * @param optionsFn   流式检索配置，slices 为切片数，executor 为驱动切片的线程池
+     * @param consumer    回调，参数为切片序号和文档
+     * @return 文档总数
+     */
+    public <T> long parallelScan(String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass,
+                                 Function<ScanOptions.ScanOptionsBuilder, ScanOptions.ScanOptionsBuilder> optionsFn,
+                                 BiConsumer<Integer, T> consumer) throws IOException {
+        return new ParallelScan<>(this, indicesName, fn, tClass, optionsFn.apply(ScanOptions.builder()).build()).forEach(consumer);
+    }
+
+    /**
+     * 并行切片检索，各切片结果通过有界队列合并为一个流，返回的流需要关闭
+     *
+     * @param indicesName 索引名
+     * @param fn          检索条件
+     * @param tClass      返回的对象类型
+     * @param optionsFn   流式检索配置，slices 为切片数，queueCapacity 为合并队列容量
+     * @return 文档流，顺序不确定
+     */
+    public <T> Stream<T> parallelStream(String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass,
+                                        Function<ScanOptions.ScanOptionsBuilder, ScanOptions.ScanOptionsBuilder> optionsFn) throws IOException {
+        ParallelScan<T> scan = new ParallelScan<>(this, indicesName, fn, tClass, optionsFn.apply(ScanOptions.builder()).build());
+        return toStream(scan, scan);
+    }
+
+    private static <T> Stream<T> toStream(SearchIterator<T> iterator) {
+        return toStream(iterator, iterator);
+    }
+
+    private static <T> Stream<T> toStream(Iterator<T> iterator, Closeable closeable) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        closeable.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * 异步保存文档
+     *
+     * @param indicesName 索引名
+     * @param object      要保存的对象
+     * @param id          文档 ID
+     * @return 文档 ID
+     */
+    public <T> CompletableFuture<String> saveAsync(String indicesName, T object, String id) {
+        String index;
+        try {
+            index = writeIndex(indicesName);
+        } catch (IOException e) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return writtenAsync(index, id, async(EsMetrics.INDEX, c -> c.index(e -> e
+                .index(index)
+                .id(id)
+                .document(object)
+        ))).thenApply(IndexResponse::id);
+    }
+
+    /**
+     * 异步保存文档
+     *
+     * @param object 要保存的对象
+     * @param id     文档 ID
+     * @return 文档 ID
+     */
+    public <T> CompletableFuture<String> saveAsync(T object, String id) {
+        return saveAsync(indicesName, object, id);
+    }
+
+    /**
+     * 异步更新文档
+     *
+     * @param indicesName 索引名
+     * @param id          文档id
+     * @param object      文档对象
+     * @return 是否更新成功，内容未变化（noop）同样视为成功
+     */
+    public <T> CompletableFuture<Boolean> updateAsync(String indicesName, String id, T object) {
+        return writtenAsync(indicesName, id, async(EsMetrics.UPDATE, c -> c.update(UpdateRequest.of(ur -> ur
+                .index(indicesName)
+                .id(id)
+                .doc(object)), object.getClass()
+        ))).thenApply(response -> Result.Updated.equals(response.result()) || Result.NoOp.equals(response.result()));
+    }
+
+    /**
+     * 异步更新文档
+     *
+     * @param id     文档id
+     * @param object 文档对象
+     * @return 是否更新成功
+     */
+    public <T> CompletableFuture<Boolean> updateAsync(String id, T object) {
+        return updateAsync(indicesName, id, object);
+    }
+
+    /**
+     * 异步删除文档
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     * @return 文档是否删除成功
+     */
+    public CompletableFuture<Boolean> deleteAsync(String indicesName, String id) {
+        return writtenAsync(indicesName, id, async(EsMetrics.DELETE, c -> c.delete(e -> e
+                .index(indicesName)
+                .id(id)
+        ))).thenApply(response -> Result.Deleted.equals(response.result()));
+    }
+
+    /**
+     * 异步删除文档
+     *
+     * @param id 文档 ID
+     * @return 文档是否删除成功
+     */
+    public CompletableFuture<Boolean> deleteAsync(String id) {
+        return deleteAsync(indicesName, id);
+    }
+
+    /**
+     * 异步通过 ID 检索文档
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     * @param tClass      返回的对象类型
+     * @return 文档对象
+     */
+    public <T> CompletableFuture<T> getByIdAsync(String indicesName, String id, Class<T> tClass) {
+        DocumentCache cache = documentCache();
+        if (cache == null) {
+            return async(EsMetrics.GET, c -> c.get(gr -> gr.index(indicesName).id(id), tClass).thenApply(GetResponse::source));
+        }
+        Object cached = cache.get(indicesName, id, tClass);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(tClass.cast(cached));
+        }
+        long epoch = cache.epoch();
+        return async(EsMetrics.GET, c -> c.get(gr -> gr.index(indicesName).id(id), tClass)).thenApply(response -> {
+            cache.put(indicesName, id, tClass, response.source(), response.seqNo(), response.primaryTerm(), epoch);
+            return tClass.cast(cache.copy(response.source()));
+        });
+    }
+
+    /**
+     * 异步通过 ID 检索文档
+     *
+     * @param id     文档 ID
+     * @param tClass 返回的对象类型
+     * @return 文档对象
+     */
+    public <T> CompletableFuture<T> getByIdAsync(String id, Class<T> tClass) {
+        return getByIdAsync(indicesName, id, tClass);
+    }
+
+    /**
+     * 以一次 _mget 异步检索多个文档，与 getByIdAsync 一样先查读缓存并写回结果，供 {@link RequestBatcher} 合并单文档查询
+     *
+     * @return 与 ids 顺序一致的结果，文档不存在时为 null，条目失败时以 IOException 结束
+     */
+    <T> List<CompletableFuture<T>> getByIdsAsync(String indicesName, List<String> ids, Class<T> tClass) {
+        DocumentCache cache = documentCache();
+        List<CompletableFuture<T>> results = new ArrayList<>(ids.size());
+        List<String> missed = new ArrayList<>(ids.size());
+        List<CompletableFuture<T>> missedResults = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Object cached = cache == null ? null : cache.get(indicesName, id, tClass);
+            if (cached != null) {
+                results.add(CompletableFuture.completedFuture(tClass.cast(cached)));
+                continue;
+            }
+            CompletableFuture<T> result = new CompletableFuture<>();
+            results.add(result);
+            missed.add(id);
+            missedResults.add(result);
+        }
+        if (missed.isEmpty()) {
+            return results;
+        }
+        long epoch = cache == null ? 0 : cache.epoch();
+        async(EsMetrics.MGET, c -> c.mget(m -> m.index(indicesName).ids(missed), tClass)).whenComplete((response, e) -> {
+            for (int i = 0; i < missedResults.size(); i++) {
+                CompletableFuture<T> result = missedResults.get(i);
+                if (e != null) {
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    continue;
+                }
+                MultiGetResponseItem<T> item = response.docs().get(i);
+                if (item.isFailure()) {
+                    result.completeExceptionally(new IOException(item.failure().error().type() + ": " + item.failure().error().reason()));
+                    continue;
+                }
+                GetResult<T> getResult = item.result();
+                T source = getResult.found() ? getResult.source() : null;
+                if (cache == null) {
+                    result.complete(source);
+                } else {
+                    cache.put(indicesName, getResult.id(), tClass, source, getResult.seqNo(), getResult.primaryTerm(), epoch);
+                    result.complete(tClass.cast(cache.copy(source)));
+                }
+            }
+        });
+        return results;
+    }
+
+    /**
+     * 异步通过条件检索文档
+     *
+     * @param searchRequest 检索条件
+     * @param tClass        返回的对象类型
+     * @return 文档对象集合
+     */
+    public <T> CompletableFuture<List<T>> searchAsync(SearchRequest searchRequest, Class<T> tClass) {
+        SearchCache cache = searchCache();
+        if (cache == null || !cacheable(searchRequest)) {
+            return doSearchAsync(searchRequest, tClass);
+        }
+        String key;
+        try {
+            key = searchCacheKey(searchRequest, tClass);
+        } catch (RuntimeException e) {
+            CompletableFuture<List<T>> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return cache.get(key, searchRequest.index(), () -> doSearchAsync(searchRequest, tClass));
+    }
+
+    private <T> CompletableFuture<List<T>> doSearchAsync(SearchRequest searchRequest, Class<T> tClass) {
+        return async(EsMetrics.SEARCH, c -> c.search(searchRequest, tClass).thenApply(response -> response.hits().hits().stream()
+                .map(Hit::source)
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * 异步统计索引中的文档总数
+     *
+     * @param indicesName 索引名
+     * @return 文档总数
+     */
+    public CompletableFuture<Long> countAsync(String indicesName) {
+        return async(EsMetrics.COUNT, c -> c.count(e -> e.index(indicesName)).thenApply(CountResponse::count));
+    }
+
+    /**
+     * 异步统计索引中的文档总数
+     *
+     * @return 文档总数
+     */
+    public CompletableFuture<Long> countAsync() {
+        return countAsync(indicesName);
+    }
+
+    /**
+     * 异步批量操作
+     *
+     * @param operations 批量操作
+     * @return 批量操作返回对象
+     */
+    public CompletableFuture<BulkResponse> bulkAsync(List<BulkOperation> operations) {
+        return bulkAsync(operations, null);
+    }
+
+    /**
+     * 异步批量操作
+     *
+     * @param defaultIndex 操作未指定索引时使用的索引名，可以为 null
+     */
+    CompletableFuture<BulkResponse> bulkAsync(List<BulkOperation> operations, String defaultIndex) {
+        return bulkWrittenAsync(operations, async(EsMetrics.BULK, c -> c.bulk(BulkRequest.of(br -> br
+                .index(defaultIndex)
+                .operations(operations)))));
+    }
+
+    /**
+     * 异步批量保存文档
+     *
+     * @param indicesName 索引名
+     * @param list        批量保存的文档集合
+     * @param ids         批量保存的 ID 集合
+     * @return 批量操作返回对象
+     */
+    public <T> CompletableFuture<BulkResponse> saveAsync(String indicesName, List<T> list, List<String> ids) {
+        if (list == null || list.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<BulkOperation> operations;
+        try {
+            operations = indexOperations(indicesName, list, ids);
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<BulkResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return bulkAsync(operations);
+    }
+
+    /**
+     * 异步批量删除文档
+     *
+     * @param indicesName 索引名
+     * @param ids         批量删除的文档 ID 集合
+     * @return 批量操作返回对象
+     */
+    public CompletableFuture<BulkResponse> deleteAsync(String indicesName, Collection<String> ids) {
+        return bulkAsync(deleteOperations(indicesName, ids));
+    }
+
+    /**
+     * 创建单文档请求合并器，窗口内并发的单文档保存、删除合并为一次 _bulk，单文档查询合并为一次 _mget，使用完毕后需关闭
+     * <pre>
+     * RequestBatcher batcher = util.requestBatcher(e -&gt; e.windowMillis(2).maxBatchSize(200));
+     * Person person = batcher.getById(INDEX_NAME, "11", Person.class);
+     * </pre>
+     *
+     * @param fn 合并器配置
+     * @return 单文档请求合并器
+     */
+    public RequestBatcher requestBatcher(Function<RequestBatcherConfig.RequestBatcherConfigBuilder, RequestBatcherConfig.RequestBatcherConfigBuilder> fn) {
+        return new RequestBatcher(this, fn.apply(RequestBatcherConfig.builder()).build());
+    }
+
+    /**
+     * 打开本地写前日志，写入先落到内存映射的 segment 文件，由后台线程按顺序回放到 ES，
+     * 目录中有上次未回放完的记录时从 checkpoint 继续回放，使用完毕后需关闭
+     * <pre>
+     * try (Spool spool = util.spool(c -&gt; c
+     *         .directory("/data/es-spool")
+     *         .maxBytes(4L * 1024 * 1024 * 1024))) {
+     *     spool.index(INDEX_NAME, id, person);
+     * }
+     * </pre>
+     *
+     * @param fn 写前日志配置，必须指定目录
+     * @return 写前日志
+     */
+    public Spool spool(Function<SpoolConfig.SpoolConfigBuilder, SpoolConfig.SpoolConfigBuilder> fn) throws IOException {
+        return new Spool(this, fn.apply(SpoolConfig.builder()).build());
+    }
+
+    /**
+     * 获取 getById 读缓存统计
+     *
+     * @return 缓存统计，未开启缓存时返回 null
+     */
+    public DocumentCacheStats getDocumentCacheStats() {
+        DocumentCache cache = documentCache();
+        return cache == null ? null : cache.stats();
+    }
+
+    /**
+     * 清空 getById 读缓存，其它客户端写入后可以调用
+     */
+    public void invalidateDocumentCache() {
+        DocumentCache cache = documentCache();
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * @return 指标监听器，未注册时为 null
+     */
+    EsMetrics metrics() {
+        return metrics;
+    }
+
+    private DocumentCache documentCache() {
+        if (documentCache == null) {
+            return null;
+        }
+        DocumentCache cache = documentCacheRef.get();
+        if (cache == null) {
+            documentCacheRef.compareAndSet(null, new DocumentCache(documentCache));
+            cache = documentCacheRef.get();
+        }
+        return cache;
+    }
+
+    /**
+     * 获取检索结果缓存统计
+     *
+     * @return 缓存统计，未开启缓存时返回 null
+     */
+    public SearchCacheStats getSearchCacheStats() {
+        SearchCache cache = searchCache();
+        return cache == null ? null : cache.stats();
+    }
+
+    /**
+     * 清空检索结果缓存，其它客户端写入后可以调用
+     */
+    public void invalidateSearchCache() {
+        SearchCache cache = searchCache();
+        if (cache != null) {
+            cache.invalidate(null);
+        }
+    }
+
+    private SearchCache searchCache() {
+        if (searchCache == null) {
+            return null;
+        }
+        SearchCache cache = searchCacheRef.get();
+        if (cache == null) {
+            searchCacheRef.compareAndSet(null, new SearchCache(searchCache));
+            cache = searchCacheRef.get();
+        }
+        return cache;
+    }
+
+    /**
+     * by query 任务结束后调用，涉及的文档 ID 未知，清空读缓存并失效涉及该索引的检索结果
+     */
+    void afterByQuery(String indicesName) {
+        DocumentCache cache = documentCache();
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        SearchCache search = searchCache();
+        if (search != null) {
+            search.invalidate(indicesName.contains(",") || indicesName.contains("*") ? null : indicesName);
+        }
+    }
+
+    private boolean cachesEnabled() {
+        return documentCache != null || searchCache != null;
+    }
+
+    /**
+     * 执行单文档写入，开启缓存时失效对应文档和涉及该索引的检索结果，写入失败时同样失效
+     */
+    private <R extends WriteResponseBase> R written(String indicesName, String id, IOCall<R> call) throws IOException {
+        if (!cachesEnabled()) {
+            return call.call();
+        }
+        R response;
+        try {
+            response = call.call();
+        } catch (IOException | RuntimeException e) {
+            afterWrite(indicesName, id, null);
+            throw e;
+        }
+        afterWrite(indicesName, id, response);
+        return response;
+    }
+
+    private <R extends WriteResponseBase> CompletableFuture<R> writtenAsync(String indicesName, String id, CompletableFuture<R> future) {
+        if (!cachesEnabled()) {
+            return future;
+        }
+        return future.whenComplete((response, e) -> afterWrite(indicesName, id, response));
+    }
+
+    private CompletableFuture<BulkResponse> bulkWrittenAsync(List<BulkOperation> operations, CompletableFuture<BulkResponse> future) {
+        if (!cachesEnabled()) {
+            return future;
+        }
+        return future.whenComplete((response, e) -> afterBulk(operations, response));
+    }
+
+    /**
+     * @param response 写入返回对象，写入失败时为 null
+     */
+    private void afterWrite(String indicesName, String id, WriteResponseBase response) {
+        DocumentCache cache = documentCache();
+        if (cache != null) {
+            if (response != null) {
+                cache.invalidate(indicesName, response.id(), response.seqNo(), response.primaryTerm());
+            } else {
+                cache.invalidate(indicesName, id, null, null);
+            }
+        }
+        SearchCache search = searchCache();
+        if (search != null) {
+            search.invalidate(indicesName);
+        }
+    }
+
+    /**
+     * @param response 批量操作返回对象，请求整体失败时为 null
+     */
+    private void afterBulk(List<BulkOperation> operations, BulkResponse response) {
+        DocumentCache cache = documentCache();
+        if (cache != null) {
+            cache.invalidate(operations, response);
+        }
+        SearchCache search = searchCache();
+        if (search != null) {
+            Set<String> indices = new HashSet<>();
+            for (BulkOperation operation : operations) {
+                indices.add(((BulkOperationBase) operation._get()).index());
+            }
+            for (String index : indices) {
+                search.invalidate(index);
+            }
+        }
+    }
+
+    /**
+     * 原始 bulk body 中的索引名和文档 ID 未单独记录，按返回条目失效，请求整体失败时失效全部缓存
+     */
+    private void afterRawBulk(BulkResponse response) {
+        DocumentCache cache = documentCache();
+        SearchCache search = searchCache();
+        if (response == null) {
+            if (cache != null) {
+                cache.invalidateAll();
+            }
+            if (search != null) {
+                search.invalidate(null);
+            }
+            return;
+        }
+        if (cache != null) {
+            cache.invalidate(response);
+        }
+        if (search != null) {
+            Set<String> indices = new HashSet<>();
+            for (BulkResponseItem item : response.items()) {
+                indices.add(item.index());
+            }
+            for (String index : indices) {
+                search.invalidate(index);
+            }
+        }
+    }
+
+    /**
+     * 阻塞等待 future 返回，异常原样抛出
+     */
+    static <R> R await(CompletableFuture<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待请求返回时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 调用异步客户端，请求构建阶段抛出的异常同样以失败的 future 返回
+     */
+    private <R> CompletableFuture<R> async(String operation, AsyncCall<R> call) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        CompletableFuture<R> future;
+        try {
+            future = call.apply(getAsyncClient());
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        if (metrics == null) {
+            return future;
+        }
+        return future.whenComplete((result, e) -> record(operation, start, result,
+                e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+    }
+
+    /**
+     * 执行同步操作，注册了指标监听器时记录耗时，未注册时直接调用
+     */
+    <R> R timed(String operation, IOCall<R> call) throws IOException {
+        if (metrics == null) {
+            return call.call();
+        }
+        long start = System.nanoTime();
+        R result;
+        try {
+            result = call.call();
+        } catch (IOException | RuntimeException e) {
+            record(operation, start, null, e);
+            throw e;
+        }
+        record(operation, start, result, null);
+        return result;
+    }
+
+    /**
+     * 记录操作耗时，并从返回对象中提取 took 和 bulk 条目结果
+     */
+    private void record(String operation, long start, Object result, Throwable error) {
+        long nanos = System.nanoTime() - start;
+        metrics.onOperation(operation, nanos, error);
+        if (result instanceof BulkResponse) {
+            BulkResponse response = (BulkResponse) result;
+            int failed = 0;
+            if (response.errors()) {
+                for (BulkResponseItem item : response.items()) {
+                    if (item.error() != null) {
+                        failed++;
+                    }
+                }
+            }
+            metrics.onBulkItems(response.items().size() - failed, failed);
+            metrics.onTook(operation, response.took(), nanos);
+        } else if (result instanceof SearchResponse) {
+            metrics.onTook(operation, ((SearchResponse<?>) result).took(), nanos);
+        } else if (result instanceof RawSearchResponse) {
+            metrics.onTook(operation, ((RawSearchResponse) result).getTook(), nanos);
+        }
+    }
+
+    @FunctionalInterface
+    private interface AsyncCall<R> {
+
+        CompletableFuture<R> apply(ElasticsearchAsyncClient client) throws Exception;
+
+    }
+
+    @FunctionalInterface
+    interface IOCall<R> {
+
+        R call() throws IOException;
+
     }
 
 }
@@ -0,0 +1,112 @@
+package com.wangrui027.utils;
+
+import org.apache.http.pool.PoolStats;
+
+import java.util.function.Supplier;
+
+/**
+ * 客户端指标监听器，通过 {@link ESUtil} 的 metrics 属性注册，未注册时不采集任何指标。
+ * <br/>
+ * 回调在请求线程或 I/O 线程中同步调用，实现需线程安全且不能阻塞。
+ */
+public interface EsMetrics {
+
+    String INDEX = "index";
+
+    String UPDATE = "update";
+
+    String DELETE = "delete";
+
+    String BULK = "bulk";
+
+    String GET = "get";
+
+    String MGET = "mget";
+
+    String SEARCH = "search";
+
+    String COUNT = "count";
+
+    /**
+     * scroll 翻页和清除 scroll 上下文
+     */
+    String SCROLL = "scroll";
+
+    /**
+     * 打开和关闭 point in time
+     */
+    String POINT_IN_TIME = "point_in_time";
+
+    /**
+     * 单次操作完成后回调
+     *
+     * @param operation 操作类型，见本接口中的常量
+     * @param nanos     客户端耗时，单位纳秒
+     * @param error     异常，成功时为 null
+     */
+    default void onOperation(String operation, long nanos, Throwable error) {
+    }
+
+    /**
+     * 返回中包含 took 的操作完成后回调，用于对比 ES 服务端耗时与客户端耗时
+     *
+     * @param operation  操作类型
+     * @param tookMillis ES 返回的 took，单位毫秒
+     * @param nanos      客户端耗时，单位纳秒
+     */
+    default void onTook(String operation, long tookMillis, long nanos) {
+    }
+
+    /**
+     * bulk 请求返回后回调
+     *
+     * @param succeeded 成功条目数
+     * @param failed    失败条目数
+     */
+    default void onBulkItems(int succeeded, int failed) {
+    }
+
+    /**
+     * 带重试的 bulk 请求重新提交前回调
+     *
+     * @param attempt 已执行的次数
+     * @param retried 本次重新提交的条目数
+     */
+    default void onBulkRetry(int attempt, int retried) {
+    }
+
+    /**
+     * 开启自适应批量大小的 BulkIngester 调整限制后回调
+     *
+     * @param maxBytes              当前单批字节数上限
+     * @param maxConcurrentRequests 当前并发请求数上限
+     */
+    default void onBulkLimits(long maxBytes, int maxConcurrentRequests) {
+    }
+
+    /**
+     * HTTP 请求发送前回调，按 Content-Length 统计，长度未知时为 -1
+     *
+     * @param bytes 请求 body 字节数
+     */
+    default void onHttpRequest(long bytes) {
+    }
+
+    /**
+     * HTTP 响应头到达后回调，按 Content-Length 统计，长度未知时为 -1
+     *
+     * @param status HTTP 状态码
+     * @param bytes  响应 body 字节数
+     */
+    default void onHttpResponse(int status, long bytes) {
+    }
+
+    /**
+     * 创建连接池后回调一次，供基于采样的 gauge 读取租用中、等待中和空闲的连接数
+     *
+     * @param poolStats 连接池统计
+     */
+    default void onConnectionPool(Supplier<PoolStats> poolStats) {
+    }
+
+}
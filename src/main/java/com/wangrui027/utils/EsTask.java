@@ -0,0 +1,129 @@
+package com.wangrui027.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 以 wait_for_completion=false 提交的服务端任务，通过 _tasks API 查询进度和取消
+ */
+public class EsTask {
+
+    private final ESUtil util;
+
+    private final String taskId;
+
+    private final String action;
+
+    /**
+     * 首次查询到任务结束时执行，可以为 null
+     */
+    private final Runnable onCompleted;
+
+    private final AtomicBoolean completionNotified = new AtomicBoolean();
+
+    /**
+     * @param action 提交任务的接口，如 _reindex、_delete_by_query，用于调整限速
+     */
+    EsTask(ESUtil util, String taskId, String action) {
+        this(util, taskId, action, null);
+    }
+
+    /**
+     * @param onCompleted 首次查询到任务结束时执行，如失效缓存
+     */
+    EsTask(ESUtil util, String taskId, String action, Runnable onCompleted) {
+        this.util = util;
+        this.taskId = taskId;
+        this.action = action;
+        this.onCompleted = onCompleted;
+    }
+
+    /**
+     * @return 任务 ID，格式为 node:id
+     */
+    public String getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * 查询任务进度
+     *
+     * @return 任务进度
+     */
+    public TaskProgress status() throws IOException {
+        JsonNode root = util.performJson("GET", "/_tasks/" + taskId, null, null);
+        boolean completed = root.path("completed").asBoolean(false);
+        if (completed && onCompleted != null && completionNotified.compareAndSet(false, true)) {
+            onCompleted.run();
+        }
+        JsonNode error = root.path("error");
+        if (!error.isMissingNode()) {
+            throw new IOException("任务 " + taskId + " 失败: " + error.path("type").asText() + ": " + error.path("reason").asText());
+        }
+        JsonNode status = completed && root.has("response") ? root.path("response") : root.path("task").path("status");
+        List<String> failures = new ArrayList<>();
+        for (JsonNode failure : status.path("failures")) {
+            JsonNode cause = failure.path("cause");
+            failures.add(cause.isMissingNode() ? failure.toString() : failure.path("id").asText() + " " + cause.path("reason").asText());
+        }
+        String canceled = status.hasNonNull("canceled") ? status.path("canceled").asText() : null;
+        return new TaskProgress(taskId, completed,
+                status.path("total").asLong(),
+                status.path("created").asLong(),
+                status.path("updated").asLong(),
+                status.path("deleted").asLong(),
+                status.path("version_conflicts").asLong(),
+                status.path("noops").asLong(),
+                status.path("batches").asLong(),
+                canceled, failures);
+    }
+
+    /**
+     * 取消任务，切片任务会同时取消所有子任务
+     */
+    public void cancel() throws IOException {
+        util.performJson("POST", "/_tasks/" + taskId + "/_cancel", null, null);
+    }
+
+    /**
+     * 动态调整任务限速
+     *
+     * @param requestsPerSecond 每秒处理的文档数，小于等于 0 表示不限速
+     */
+    public void rethrottle(float requestsPerSecond) throws IOException {
+        util.performJson("POST", "/" + action + "/" + taskId + "/_rethrottle",
+                Collections.singletonMap("requests_per_second", requestsPerSecond > 0 ? String.valueOf(requestsPerSecond) : "-1"), null);
+    }
+
+    /**
+     * 轮询等待任务结束
+     *
+     * @param pollIntervalMillis 轮询间隔，单位毫秒
+     * @param progress           每次轮询后的进度回调，可以为 null
+     * @return 最终进度
+     */
+    public TaskProgress await(long pollIntervalMillis, Consumer<TaskProgress> progress) throws IOException {
+        while (true) {
+            TaskProgress current = status();
+            if (progress != null) {
+                progress.accept(current);
+            }
+            if (current.isCompleted()) {
+                return current;
+            }
+            try {
+                Thread.sleep(pollIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待任务 " + taskId + " 结束时被中断", e);
+            }
+        }
+    }
+
+}
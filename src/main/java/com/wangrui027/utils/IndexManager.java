@@ -0,0 +1,265 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.ResponseException;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 索引生命周期管理，缓存索引和别名是否存在，向注册了模板的索引名写入时计算滚动后的实际索引名，
+ * 首次写入时按模板创建，之后的写入不再产生元数据请求
+ */
+final class IndexManager {
+
+    private final ESUtil util;
+
+    private final Map<String, IndexTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * 已确认存在的索引和别名
+     */
+    private final Set<String> existing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 滚动模板当前周期的实际索引名
+     */
+    private final Map<String, Period> periods = new ConcurrentHashMap<>();
+
+    /**
+     * 别名到写索引
+     */
+    private final Map<String, String> writeIndices = new ConcurrentHashMap<>();
+
+    IndexManager(ESUtil util) {
+        this.util = util;
+    }
+
+    void register(IndexTemplate template) {
+        if (template.getName() == null) {
+            throw new IllegalArgumentException("索引模板需要指定 name");
+        }
+        templates.put(template.getName(), template);
+        periods.remove(template.getName());
+    }
+
+    /**
+     * 计算写入的实际索引名，未注册模板时原样返回，实际索引不存在时按模板创建
+     *
+     * @param indicesName 写入时使用的索引名
+     * @return 实际索引名
+     */
+    String resolve(String indicesName) throws IOException {
+        String index = resolveName(indicesName);
+        if (index != null && !existing.contains(index)) {
+            IndexTemplate template = templates.get(indicesName);
+            if (template != null) {
+                create(template, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 只计算写入的实际索引名，不检查索引是否存在，不产生任何请求
+     *
+     * @param indicesName 写入时使用的索引名
+     * @return 实际索引名
+     */
+    String resolveName(String indicesName) {
+        if (indicesName == null) {
+            return null;
+        }
+        IndexTemplate template = templates.get(indicesName);
+        return template == null ? indicesName : indexName(template);
+    }
+
+    /**
+     * 实际索引名属于已注册的模板且尚未确认存在时按模板创建，用于只计算了索引名的写入在提交前补建索引
+     *
+     * @param index 实际索引名
+     */
+    void ensureCreated(String index) throws IOException {
+        if (index == null || existing.contains(index)) {
+            return;
+        }
+        IndexTemplate template = templateOf(index);
+        if (template != null) {
+            create(template, index);
+        }
+    }
+
+    boolean hasTemplates() {
+        return !templates.isEmpty();
+    }
+
+    /**
+     * 检测索引或别名是否存在，存在的结果会被缓存，不存在时每次都会查询
+     */
+    boolean exists(String indicesName) throws IOException {
+        if (existing.contains(indicesName)) {
+            return true;
+        }
+        boolean exists = util.indicesExist(indicesName);
+        if (exists) {
+            existing.add(indicesName);
+        }
+        return exists;
+    }
+
+    /**
+     * 解析别名的写索引，别名只指向一个索引时即为该索引，名称本身是索引时原样返回
+     */
+    String writeIndex(String alias) throws IOException {
+        String cached = writeIndices.get(alias);
+        if (cached != null) {
+            return cached;
+        }
+        JsonNode root;
+        try {
+            root = util.performJson("GET", "/_alias/" + alias, null, null);
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() != 404) {
+                throw e;
+            }
+            writeIndices.put(alias, alias);
+            return alias;
+        }
+        String writeIndex = null;
+        String only = null;
+        int count = 0;
+        Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            count++;
+            only = field.getKey();
+            if (field.getValue().path("aliases").path(alias).path("is_write_index").asBoolean(false)) {
+                writeIndex = field.getKey();
+            }
+        }
+        if (writeIndex == null && count == 1) {
+            writeIndex = only;
+        }
+        if (writeIndex == null) {
+            throw new IOException("别名 " + alias + " 指向多个索引且没有指定写索引");
+        }
+        writeIndices.put(alias, writeIndex);
+        existing.add(writeIndex);
+        return writeIndex;
+    }
+
+    /**
+     * 通过当前实例创建索引后调用
+     */
+    void created(String indicesName) {
+        existing.add(indicesName);
+    }
+
+    /**
+     * 失效索引或别名的缓存，为 null、多个索引或通配符时全部失效，已注册的模板保留
+     */
+    void invalidate(String indicesName) {
+        if (indicesName == null || indicesName.contains(",") || indicesName.contains("*") || "_all".equals(indicesName)) {
+            existing.clear();
+            writeIndices.clear();
+            periods.clear();
+            return;
+        }
+        existing.remove(indicesName);
+        writeIndices.remove(indicesName);
+        writeIndices.values().removeIf(indicesName::equals);
+        periods.values().removeIf(period -> period.index.equals(indicesName));
+    }
+
+    /**
+     * 同一周期内复用上次计算的索引名，只比较一次时间戳
+     */
+    private String indexName(IndexTemplate template) {
+        if (template.getRollover() == IndexRollover.NONE) {
+            return template.getName();
+        }
+        long now = System.currentTimeMillis();
+        Period period = periods.get(template.getName());
+        if (period == null || now >= period.endMillis || now < period.startMillis) {
+            LocalDate date = LocalDate.now(template.getZoneId());
+            LocalDate next = template.getRollover() == IndexRollover.DAILY ? date.plusDays(1) : date.withDayOfMonth(1).plusMonths(1);
+            LocalDate start = template.getRollover() == IndexRollover.DAILY ? date : date.withDayOfMonth(1);
+            period = new Period(template.getRollover().indexName(template.getName(), date),
+                    ZonedDateTime.of(start.atStartOfDay(), template.getZoneId()).toInstant().toEpochMilli(),
+                    ZonedDateTime.of(next.atStartOfDay(), template.getZoneId()).toInstant().toEpochMilli());
+            periods.put(template.getName(), period);
+        }
+        return period.index;
+    }
+
+    /**
+     * 查找实际索引名所属的模板，滚动索引按 模板名-日期 匹配
+     */
+    private IndexTemplate templateOf(String index) {
+        IndexTemplate template = templates.get(index);
+        if (template != null) {
+            return template;
+        }
+        for (IndexTemplate candidate : templates.values()) {
+            if (candidate.getRollover().matches(candidate.getName(), index)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按模板创建索引，其它客户端已创建时视为成功
+     */
+    private void create(IndexTemplate template, String index) throws IOException {
+        synchronized (template) {
+            if (existing.contains(index)) {
+                return;
+            }
+            if (!util.indicesExist(index)) {
+                ObjectNode body = template.getBody() == null
+                        ? RawJson.MAPPER.createObjectNode()
+                        : (ObjectNode) RawJson.MAPPER.readTree(template.getBody());
+                String alias = template.readAlias();
+                if (alias != null) {
+                    ObjectNode aliases = body.has("aliases") ? (ObjectNode) body.get("aliases") : body.putObject("aliases");
+                    if (!aliases.has(alias)) {
+                        aliases.putObject(alias);
+                    }
+                }
+                try {
+                    util.indicesCreate(index, body.toString());
+                } catch (ElasticsearchException e) {
+                    if (e.error() == null || !"resource_already_exists_exception".equals(e.error().type())) {
+                        throw e;
+                    }
+                }
+            }
+            existing.add(index);
+        }
+    }
+
+    private static class Period {
+
+        private final String index;
+
+        private final long startMillis;
+
+        private final long endMillis;
+
+        private Period(String index, long startMillis, long endMillis) {
+            this.index = index;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.wangrui027.utils;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 按时间滚动的索引命名方式，实际索引名为 模板名-日期
+ */
+public enum IndexRollover {
+
+    /**
+     * 不滚动，实际索引名即模板名
+     */
+    NONE(null),
+
+    /**
+     * 每天一个索引，如 person-2024.01.31
+     */
+    DAILY(DateTimeFormatter.ofPattern("yyyy.MM.dd")),
+
+    /**
+     * 每月一个索引，如 person-2024.01
+     */
+    MONTHLY(DateTimeFormatter.ofPattern("yyyy.MM"));
+
+    private final DateTimeFormatter formatter;
+
+    IndexRollover(DateTimeFormatter formatter) {
+        this.formatter = formatter;
+    }
+
+    /**
+     * @param name 模板名
+     * @param date 写入日期
+     * @return 实际索引名
+     */
+    public String indexName(String name, LocalDate date) {
+        return formatter == null ? name : name + "-" + formatter.format(date);
+    }
+
+    /**
+     * @param name  模板名
+     * @param index 实际索引名
+     * @return 实际索引名是否为该模板按当前方式滚动出的索引
+     */
+    public boolean matches(String name, String index) {
+        if (formatter == null || !index.startsWith(name + "-")) {
+            return false;
+        }
+        try {
+            formatter.parse(index.substring(name.length() + 1));
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.ZoneId;
+
+/**
+ * 索引模板，向模板名写入时按需创建实际索引，mapping 和 settings 取自 body
+ * <pre>
+ * util.registerIndexTemplate(IndexTemplate.builder()
+ *         .name("person_log")
+ *         .body(json)
+ *         .rollover(IndexRollover.DAILY)
+ *         .build());
+ * util.save("person_log", person, id); // 写入 person_log-2024.01.31，不存在时先创建
+ * </pre>
+ */
+@Getter
+@Builder(toBuilder = true)
+public class IndexTemplate {
+
+    /**
+     * 模板名，即写入时使用的索引名
+     */
+    private String name;
+
+    /**
+     * 创建索引的请求 body，格式同 {@link ESUtil#indicesCreateWithJson(String, String)}，可以为 null
+     */
+    private String body;
+
+    /**
+     * 滚动方式
+     */
+    @Builder.Default
+    private IndexRollover rollover = IndexRollover.NONE;
+
+    /**
+     * 创建索引时附加的读别名，为 null 时滚动索引使用模板名作为别名，不滚动时不附加
+     */
+    private String alias;
+
+    /**
+     * 计算滚动日期使用的时区
+     */
+    @Builder.Default
+    private ZoneId zoneId = ZoneId.systemDefault();
+
+    /**
+     * @return 实际附加的读别名，没有时为 null
+     */
+    String readAlias() {
+        if (alias != null) {
+            return alias;
+        }
+        return rollover == IndexRollover.NONE ? null : name;
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+/**
+ * JSON 映射器工厂。
+ * <br/>
+ * 默认映射器在进程内共享同一个 ObjectMapper，Jackson 按类型缓存的序列化器、反序列化器在所有 {@link ESUtil} 实例间复用，
+ * 同时启用 Afterburner 字节码加速属性读写，并使用线程级缓冲区池
+ */
+public final class JsonpMappers {
+
+    private static final ObjectMapper OBJECT_MAPPER = newObjectMapper();
+
+    private static final JacksonJsonpMapper DEFAULT = new JacksonJsonpMapper(OBJECT_MAPPER);
+
+    private JsonpMappers() {
+    }
+
+    /**
+     * @return 进程内共享的默认映射器
+     */
+    public static JacksonJsonpMapper defaultMapper() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return 默认映射器使用的 ObjectMapper，不要修改其配置
+     */
+    public static ObjectMapper objectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    /**
+     * 创建与默认映射器配置一致的 ObjectMapper，可以在此基础上注册模块后传给 {@link JacksonJsonpMapper}
+     *
+     * @return ObjectMapper
+     */
+    public static ObjectMapper newObjectMapper() {
+        JsonFactory factory = JsonFactory.builder()
+                .recyclerPool(JsonRecyclerPools.threadLocalPool())
+                .build();
+        return new ObjectMapper(factory)
+                .registerModule(new AfterburnerModule())
+                .configure(SerializationFeature.INDENT_OUTPUT, false)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+}
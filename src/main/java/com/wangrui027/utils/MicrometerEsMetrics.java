@@ -0,0 +1,154 @@
+package com.wangrui027.utils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.pool.PoolStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 基于 Micrometer 的指标实现，micrometer-core 为可选依赖，使用时需自行引入
+ * <pre>
+ * ESUtil util = ESUtil.of(e -&gt; e
+ *         .ip("192.168.101.235")
+ *         .metrics(new MicrometerEsMetrics(registry)));
+ * </pre>
+ */
+public class MicrometerEsMetrics implements EsMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Tags tags;
+
+    private final Map<String, Timer> operationTimers = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> tookTimers = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> overheadTimers = new ConcurrentHashMap<>();
+
+    private final DistributionSummary bytesOut;
+
+    private final DistributionSummary bytesIn;
+
+    private final AtomicLong bulkLimitBytes = new AtomicLong();
+
+    private final AtomicInteger bulkLimitConcurrency = new AtomicInteger();
+
+    private final AtomicBoolean bulkLimitsRegistered = new AtomicBoolean();
+
+    public MicrometerEsMetrics(MeterRegistry registry) {
+        this(registry, Tags.empty());
+    }
+
+    /**
+     * @param registry 指标注册中心
+     * @param tags     附加到所有指标上的标签，如集群名
+     */
+    public MicrometerEsMetrics(MeterRegistry registry, Iterable<Tag> tags) {
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+        this.bytesOut = DistributionSummary.builder("es.client.http.bytes")
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .tag("direction", "out")
+                .register(registry);
+        this.bytesIn = DistributionSummary.builder("es.client.http.bytes")
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .tag("direction", "in")
+                .register(registry);
+    }
+
+    @Override
+    public void onOperation(String operation, long nanos, Throwable error) {
+        String outcome = error == null ? "success" : "error";
+        operationTimers.computeIfAbsent(operation + ':' + outcome, k -> Timer.builder("es.client.operation")
+                .tags(tags)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(registry)
+        ).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onTook(String operation, long tookMillis, long nanos) {
+        tookTimers.computeIfAbsent(operation, k -> Timer.builder("es.client.took")
+                .description("ES 返回的服务端耗时")
+                .tags(tags)
+                .tag("operation", operation)
+                .register(registry)
+        ).record(tookMillis, TimeUnit.MILLISECONDS);
+        long overhead = nanos - TimeUnit.MILLISECONDS.toNanos(tookMillis);
+        overheadTimers.computeIfAbsent(operation, k -> Timer.builder("es.client.overhead")
+                .description("客户端耗时减去服务端耗时，包含网络传输和序列化")
+                .tags(tags)
+                .tag("operation", operation)
+                .register(registry)
+        ).record(Math.max(0, overhead), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onBulkItems(int succeeded, int failed) {
+        registry.counter("es.client.bulk.items", tags.and("result", "success")).increment(succeeded);
+        if (failed > 0) {
+            registry.counter("es.client.bulk.items", tags.and("result", "failure")).increment(failed);
+        }
+    }
+
+    @Override
+    public void onBulkRetry(int attempt, int retried) {
+        registry.counter("es.client.bulk.retries", tags).increment(retried);
+    }
+
+    /**
+     * 多个自适应 BulkIngester 共用同一个实例时，gauge 反映最近一次调整的值
+     */
+    @Override
+    public void onBulkLimits(long maxBytes, int maxConcurrentRequests) {
+        bulkLimitBytes.set(maxBytes);
+        bulkLimitConcurrency.set(maxConcurrentRequests);
+        if (bulkLimitsRegistered.compareAndSet(false, true)) {
+            Gauge.builder("es.client.bulk.limit.bytes", bulkLimitBytes, AtomicLong::get).baseUnit("bytes").tags(tags).register(registry);
+            Gauge.builder("es.client.bulk.limit.concurrency", bulkLimitConcurrency, AtomicInteger::get).tags(tags).register(registry);
+        }
+    }
+
+    @Override
+    public void onHttpRequest(long bytes) {
+        if (bytes >= 0) {
+            bytesOut.record(bytes);
+        }
+    }
+
+    @Override
+    public void onHttpResponse(int status, long bytes) {
+        if (bytes >= 0) {
+            bytesIn.record(bytes);
+        }
+        if (status >= 400) {
+            registry.counter("es.client.http.errors", tags.and("status", String.valueOf(status))).increment();
+        }
+    }
+
+    /**
+     * 同一注册中心中同名 gauge 只保留首次注册的连接池，gauge 强引用连接池统计，避免被回收后读数变为 NaN
+     */
+    @Override
+    public void onConnectionPool(Supplier<PoolStats> poolStats) {
+        Gauge.builder("es.client.pool.leased", poolStats, s -> s.get().getLeased()).tags(tags).strongReference(true).register(registry);
+        Gauge.builder("es.client.pool.pending", poolStats, s -> s.get().getPending()).tags(tags).strongReference(true).register(registry);
+        Gauge.builder("es.client.pool.available", poolStats, s -> s.get().getAvailable()).tags(tags).strongReference(true).register(registry);
+        Gauge.builder("es.client.pool.max", poolStats, s -> s.get().getMax()).tags(tags).strongReference(true).register(registry);
+    }
+
+}
@@ -0,0 +1,259 @@
+package com.wangrui027.utils;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * 可复用的 NDJSON bulk 请求 body，原始 JSON 文档直接拷贝进缓冲区，不经过对象序列化。
+ * <br/>
+ * 非线程安全，通过 {@link #local()} 获取当前线程复用的实例，用完后调用 {@link #release()}。
+ */
+class NdjsonBuffer {
+
+    /**
+     * 释放时超过该容量的缓冲区会被收缩，避免偶发的大请求长期占用内存
+     */
+    private static final int MAX_RETAINED_CAPACITY = 8 * 1024 * 1024;
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<NdjsonBuffer> LOCAL = ThreadLocal.withInitial(NdjsonBuffer::new);
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+
+    private int count;
+
+    private int actions;
+
+    /**
+     * @return 当前线程复用的缓冲区，已清空
+     */
+    static NdjsonBuffer local() {
+        NdjsonBuffer buffer = LOCAL.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * 追加 index 操作
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID，为 null 时由 ES 生成
+     * @param document    原始 JSON 文档，支持 byte[]、ByteBuffer、CharSequence
+     */
+    void appendIndex(String indicesName, String id, Object document) {
+        appendActionLine("index", indicesName, id, null);
+        appendDocument(document);
+    }
+
+    /**
+     * 追加 delete 操作
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     */
+    void appendDelete(String indicesName, String id) {
+        appendActionLine("delete", indicesName, id, null);
+    }
+
+    /**
+     * 追加 action 行
+     *
+     * @param action      操作类型，index、create、update、delete
+     * @param indicesName 索引名
+     * @param id          文档 ID，可以为 null
+     * @param extra       追加到 action 元数据中的 JSON 片段，如 "\"retry_on_conflict\":3"，可以为 null
+     */
+    void appendActionLine(String action, String indicesName, String id, String extra) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("{\"").append(action).append("\":{");
+        boolean first = true;
+        if (indicesName != null) {
+            sb.append("\"_index\":");
+            appendQuoted(sb, indicesName);
+            first = false;
+        }
+        if (id != null) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append("\"_id\":");
+            appendQuoted(sb, id);
+            first = false;
+        }
+        if (extra != null) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append(extra);
+        }
+        sb.append("}}\n");
+        write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        actions++;
+    }
+
+    /**
+     * 追加文档行，文档中的换行符替换为空格以满足 NDJSON 格式，合法 JSON 中的换行只可能是空白符
+     *
+     * @param document 原始 JSON 文档，支持 byte[]、ByteBuffer、CharSequence
+     */
+    void appendDocument(Object document) {
+        appendJson(document);
+        endLine();
+    }
+
+    /**
+     * 在当前行追加原始 JSON 片段，不换行，用于拼接 update 等由多个片段组成的行
+     *
+     * @param json 原始 JSON，支持 byte[]、ByteBuffer、CharSequence
+     */
+    void appendJson(Object json) {
+        if (json instanceof byte[]) {
+            byte[] bytes = (byte[]) json;
+            writeRaw(bytes, 0, bytes.length);
+        } else if (json instanceof ByteBuffer) {
+            ByteBuffer byteBuffer = ((ByteBuffer) json).duplicate();
+            if (byteBuffer.hasArray()) {
+                writeRaw(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining());
+            } else {
+                int length = byteBuffer.remaining();
+                ensureCapacity(count + length);
+                int start = count;
+                byteBuffer.get(buf, count, length);
+                count += length;
+                replaceNewlines(start, count);
+            }
+        } else if (json instanceof CharSequence) {
+            byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            writeRaw(bytes, 0, bytes.length);
+        } else {
+            throw new IllegalArgumentException("不支持的原始文档类型: " + (json == null ? null : json.getClass()));
+        }
+    }
+
+    /**
+     * 结束当前行
+     */
+    void endLine() {
+        ensureCapacity(count + 1);
+        buf[count++] = '\n';
+    }
+
+    /**
+     * 追加已经是 NDJSON 格式的行，原样拷贝，不替换换行符
+     *
+     * @param lines   完整的 NDJSON 行，从 position 到 limit
+     * @param actions 包含的操作数
+     */
+    void appendNdjson(ByteBuffer lines, int actions) {
+        ByteBuffer source = lines.duplicate();
+        int length = source.remaining();
+        ensureCapacity(count + length);
+        source.get(buf, count, length);
+        count += length;
+        this.actions += actions;
+    }
+
+    /**
+     * 把 body 拷贝到 target 的当前位置
+     */
+    void copyTo(ByteBuffer target) {
+        target.put(buf, 0, count);
+    }
+
+    /**
+     * 用 body 更新校验和
+     */
+    void updateChecksum(Checksum checksum) {
+        checksum.update(buf, 0, count);
+    }
+
+    /**
+     * @return 已追加的操作数
+     */
+    int actions() {
+        return actions;
+    }
+
+    /**
+     * @return body 字节数
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return 直接引用内部数组的请求 entity，在下一次修改缓冲区前有效
+     */
+    HttpEntity toEntity() {
+        return new NByteArrayEntity(buf, 0, count, ContentType.APPLICATION_JSON);
+    }
+
+    void reset() {
+        count = 0;
+        actions = 0;
+    }
+
+    /**
+     * 清空缓冲区，容量过大时收缩
+     */
+    void release() {
+        reset();
+        if (buf.length > MAX_RETAINED_CAPACITY) {
+            buf = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    private void writeRaw(byte[] bytes, int offset, int length) {
+        ensureCapacity(count + length);
+        int start = count;
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+        replaceNewlines(start, count);
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(count + bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void replaceNewlines(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == '\n' || buf[i] == '\r') {
+                buf[i] = ' ';
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+        }
+    }
+
+    /**
+     * 追加 JSON 字符串，转义引号、反斜杠和控制字符
+     */
+    static void appendQuoted(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+}
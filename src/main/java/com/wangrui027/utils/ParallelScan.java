@@ -0,0 +1,303 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 并行切片检索，将一个检索拆分为多个 sliced PIT / scroll 切片，由线程池并发驱动。
+ * <br/>
+ * 可以通过 {@link #forEach(BiConsumer)} 按切片回调，也可以作为迭代器把各切片结果合并为一个有界队列消费，
+ * 使用完毕后需关闭以释放 PIT / scroll 上下文和线程池。
+ *
+ * @param <T> 文档类型
+ */
+public class ParallelScan<T> implements Iterator<T>, Closeable {
+
+    private static final Object END = new Object();
+
+    private static final Object NULL_SOURCE = new Object();
+
+    private final ESUtil util;
+
+    private final int slices;
+
+    private final ExecutorService executor;
+
+    private final boolean ownsExecutor;
+
+    /**
+     * 各切片共享的 PIT，切片检索后更新为 ES 返回的最新 ID，关闭时使用
+     */
+    private final AtomicReference<String> sharedPit;
+
+    private final List<SearchIterator<T>> iterators = new ArrayList<>();
+
+    private final List<Future<?>> producers = new ArrayList<>();
+
+    private final BlockingQueue<Object> queue;
+
+    private volatile boolean cancelled;
+
+    private boolean started;
+
+    private boolean closed;
+
+    private int finished;
+
+    private Object nextItem;
+
+    ParallelScan(ESUtil util, String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass, ScanOptions options) throws IOException {
+        this.util = util;
+        this.slices = Math.max(1, options.getSlices());
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, options.getQueueCapacity()));
+        this.ownsExecutor = options.getExecutor() == null;
+        this.executor = ownsExecutor
+                ? Executors.newFixedThreadPool(slices, BulkIngester.daemonThreadFactory("es-parallel-scan"))
+                : options.getExecutor();
+        String pitId = null;
+        ScanOptions sliceOptions = options;
+        if (options.getMode() == ScanMode.PIT) {
+            try {
+                pitId = util.timed(EsMetrics.POINT_IN_TIME, () -> util.getClient().openPointInTime(o -> o
+                        .index(indicesName)
+                        .keepAlive(k -> k.time(options.getKeepAlive()))
+                )).id();
+            } catch (ElasticsearchException e) {
+                // 7.10 以下版本不支持 point in time，回退为 sliced scroll
+                sliceOptions = options.toBuilder().mode(ScanMode.SCROLL).build();
+            }
+        }
+        this.sharedPit = pitId != null ? new AtomicReference<>(pitId) : null;
+        for (int i = 0; i < slices; i++) {
+            // 切片线程同步拉取，不再为每个切片单独创建预取线程
+            iterators.add(new SearchIterator<>(util, indicesName, fn, tClass, sliceOptions, i, slices, sharedPit, false));
+        }
+    }
+
+    /**
+     * 按切片回调每个文档，回调在切片线程中并发执行，全部切片结束后返回并关闭检索
+     *
+     * @param consumer 回调，参数为切片序号和文档
+     * @return 文档总数
+     */
+    public long forEach(BiConsumer<Integer, T> consumer) throws IOException {
+        return forEachHit((sliceId, hit) -> consumer.accept(sliceId, hit.source()));
+    }
+
+    /**
+     * 按切片回调每条命中记录，包含 _id 等元数据，回调在切片线程中并发执行，全部切片结束后返回并关闭检索
+     *
+     * @param consumer 回调，参数为切片序号和命中记录
+     * @return 文档总数
+     */
+    public long forEachHit(BiConsumer<Integer, Hit<T>> consumer) throws IOException {
+        if (started) {
+            throw new IllegalStateException("ParallelScan 已开始消费");
+        }
+        started = true;
+        List<Future<Long>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < slices; i++) {
+                int sliceId = i;
+                SearchIterator<T> iterator = iterators.get(i);
+                Future<Long> future = executor.submit(() -> {
+                    long count = 0;
+                    try {
+                        while (!cancelled && iterator.hasNext()) {
+                            consumer.accept(sliceId, iterator.nextHit());
+                            count++;
+                        }
+                    } catch (RuntimeException e) {
+                        cancelled = true;
+                        throw e;
+                    } finally {
+                        iterator.close();
+                    }
+                    return count;
+                });
+                futures.add(future);
+                producers.add(future);
+            }
+            long total = 0;
+            Throwable failure = null;
+            for (Future<Long> future : futures) {
+                try {
+                    total += future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                    Thread.currentThread().interrupt();
+                    throw new IOException("并行检索被中断", e);
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw propagate(failure);
+            }
+            return total;
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextItem != null) {
+            return true;
+        }
+        if (!started) {
+            startProducers();
+        }
+        while (finished < slices && !closed) {
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("并行检索被中断", e);
+            }
+            if (item == END) {
+                finished++;
+            } else if (item instanceof Failure) {
+                cancelled = true;
+                throw propagate(((Failure) item).cause);
+            } else {
+                nextItem = item;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object item = nextItem;
+        nextItem = null;
+        return item == NULL_SOURCE ? null : (T) item;
+    }
+
+    /**
+     * 停止所有切片，释放 PIT / scroll 上下文，关闭内部创建的线程池
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancelled = true;
+        queue.clear();
+        try {
+            if (!started) {
+                for (SearchIterator<T> iterator : iterators) {
+                    iterator.close();
+                }
+            }
+            for (Future<?> producer : producers) {
+                try {
+                    producer.get();
+                } catch (ExecutionException ignored) {
+                    // 切片异常已经抛给消费方
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (sharedPit != null && sharedPit.get() != null) {
+                String pit = sharedPit.get();
+                util.timed(EsMetrics.POINT_IN_TIME, () -> util.getClient().closePointInTime(c -> c.id(pit)));
+            }
+        } finally {
+            if (ownsExecutor) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private void startProducers() {
+        started = true;
+        for (SearchIterator<T> iterator : iterators) {
+            producers.add(executor.submit(() -> {
+                try {
+                    while (!cancelled && iterator.hasNext()) {
+                        T source = iterator.next();
+                        put(source == null ? NULL_SOURCE : source);
+                    }
+                    put(END);
+                } catch (Throwable e) {
+                    put(new Failure(e));
+                } finally {
+                    try {
+                        iterator.close();
+                    } catch (IOException ignored) {
+                        // 上下文会在 keepAlive 到期后由 ES 自动释放
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * 队列满时阻塞切片线程，关闭后放弃入队
+     */
+    private void put(Object item) {
+        try {
+            while (!cancelled) {
+                if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof IOException) {
+            return new UncheckedIOException((IOException) cause);
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private static class Failure {
+
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * bulk 中的单个局部更新，doc 和 script 二选一
+ * <pre>
+ * PartialUpdate.of(u -&gt; u
+ *         .id("11")
+ *         .script("ctx._source.views += params.n")
+ *         .scriptParams(ImmutableMap.of("n", 1))
+ *         .upsert(ImmutableMap.of("views", 1))
+ *         .retryOnConflict(3));
+ * </pre>
+ */
+@Getter
+@Builder(toBuilder = true)
+public class PartialUpdate {
+
+    /**
+     * 文档 ID
+     */
+    private String id;
+
+    /**
+     * 索引名，为 null 时使用批量更新时传入的索引名
+     */
+    private String index;
+
+    /**
+     * 要合并的字段，可以是 Map、对象或原始 JSON（byte[]、ByteBuffer、String）
+     */
+    private Object doc;
+
+    /**
+     * 文档不存在时是否把 doc 作为新文档写入
+     */
+    private boolean docAsUpsert;
+
+    /**
+     * 文档不存在时写入的文档，格式同 doc，可以为 null
+     */
+    private Object upsert;
+
+    /**
+     * painless 脚本，如 ctx._source.count += params.n
+     */
+    private String script;
+
+    /**
+     * 脚本参数
+     */
+    private Map<String, Object> scriptParams;
+
+    /**
+     * 文档不存在时是否同样执行脚本，ctx._source 初始为 upsert
+     */
+    private boolean scriptedUpsert;
+
+    /**
+     * doc 与现有文档相同时是否跳过写入并返回 noop，为 null 时使用 ES 默认值 true
+     */
+    private Boolean detectNoop;
+
+    /**
+     * 版本冲突时的重试次数，为 null 时不重试
+     */
+    private Integer retryOnConflict;
+
+    /**
+     * 路由
+     */
+    private String routing;
+
+    public static PartialUpdate of(Function<PartialUpdateBuilder, PartialUpdateBuilder> fn) {
+        return fn.apply(builder()).build();
+    }
+
+    /**
+     * 合并字段的局部更新
+     *
+     * @param id  文档 ID
+     * @param doc 要合并的字段
+     * @return 局部更新
+     */
+    public static PartialUpdate doc(String id, Object doc) {
+        return builder().id(id).doc(doc).build();
+    }
+
+    /**
+     * 合并字段的局部更新，文档不存在时把 doc 作为新文档写入
+     *
+     * @param id  文档 ID
+     * @param doc 要合并的字段
+     * @return 局部更新
+     */
+    public static PartialUpdate upsert(String id, Object doc) {
+        return builder().id(id).doc(doc).docAsUpsert(true).build();
+    }
+
+}
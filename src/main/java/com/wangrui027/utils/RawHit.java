@@ -0,0 +1,140 @@
+package com.wangrui027.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 原始命中记录，_source 为返回报文中的字节切片，不做任何解析。
+ * <br/>
+ * 通过 {@link #field(String, Class)} 按需解析单个字段，通过 {@link #as(Class)} 解析为轻量的投影对象。
+ */
+public class RawHit {
+
+    @Getter
+    private final String index;
+
+    @Getter
+    private final String id;
+
+    @Getter
+    private final Double score;
+
+    private final byte[] buf;
+
+    private final int offset;
+
+    private final int length;
+
+    /**
+     * 按客户端配置的 ObjectMapper 解析 _source
+     */
+    private final RawJson json;
+
+    RawHit(String index, String id, Double score, byte[] buf, int offset, int length, RawJson json) {
+        this.index = index;
+        this.id = id;
+        this.score = score;
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+        this.json = json;
+    }
+
+    /**
+     * @return 是否包含 _source
+     */
+    public boolean hasSource() {
+        return length > 0;
+    }
+
+    /**
+     * @return _source 的只读字节切片，与返回报文共用同一个数组
+     */
+    public ByteBuffer sourceBytes() {
+        return ByteBuffer.wrap(buf, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 将 _source 原样写出，如直接转发给网关响应
+     *
+     * @param out 输出流
+     */
+    public void writeSourceTo(OutputStream out) throws IOException {
+        out.write(buf, offset, length);
+    }
+
+    /**
+     * @return _source 字符串
+     */
+    public String sourceAsString() {
+        return new String(buf, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解析单个字段，仅扫描 _source 直到找到该字段，其余字段跳过不解析
+     *
+     * @param path 字段名，嵌套字段用 . 分隔，如 extendsInfo.电话
+     * @param type 字段类型
+     * @return 字段值，不存在时为 null
+     */
+    public <V> V field(String path, Class<V> type) {
+        if (!hasSource()) {
+            return null;
+        }
+        String[] names = path.split("\\.");
+        try (JsonParser parser = json.factory().createParser(buf, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            int depth = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!names[depth].equals(name)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (depth == names.length - 1) {
+                    return value == JsonToken.VALUE_NULL ? null : json.reader(type).readValue(parser);
+                }
+                if (value != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                depth++;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 将 _source 解析为投影对象，对象中不存在的字段会被忽略
+     *
+     * @param type 投影类型
+     * @return 投影对象
+     */
+    public <R> R as(Class<R> type) {
+        if (!hasSource()) {
+            return null;
+        }
+        try {
+            return json.reader(type).readValue(buf, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RawHit(index=" + index + ", id=" + id + ", score=" + score + ", source=" + sourceAsString() + ")";
+    }
+
+}
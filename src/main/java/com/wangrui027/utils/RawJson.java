@@ -0,0 +1,58 @@
+package com.wangrui027.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 原始 JSON 解析。{@link #MAPPER} 用于构造和解析请求、返回 body，
+ * 实例按客户端配置的 ObjectMapper 解析命中记录的 _source，按类型缓存 ObjectReader
+ */
+final class RawJson {
+
+    static final ObjectMapper MAPPER = JsonpMappers.newObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    private static final RawJson DEFAULT = new RawJson(MAPPER);
+
+    /**
+     * 按 ObjectMapper 复用实例，多个客户端共用同一个映射器时共用 ObjectReader 缓存
+     */
+    private static final Map<ObjectMapper, RawJson> INSTANCES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final ObjectMapper mapper;
+
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private RawJson(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param objectMapper 客户端配置的 ObjectMapper，为 null 时使用默认配置
+     * @return 使用该 ObjectMapper 的模块和命名策略解析的实例，投影时忽略不存在的字段
+     */
+    static RawJson of(ObjectMapper objectMapper) {
+        if (objectMapper == null || objectMapper == JsonpMappers.objectMapper()) {
+            return DEFAULT;
+        }
+        return INSTANCES.computeIfAbsent(objectMapper, RawJson::new);
+    }
+
+    JsonFactory factory() {
+        return mapper.getFactory();
+    }
+
+    ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(t).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.wangrui027.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 原始检索结果，命中记录的 _source 不做解析
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class RawSearchResponse {
+
+    /**
+     * ES 返回的 took，单位毫秒
+     */
+    private final long took;
+
+    /**
+     * 命中总数
+     */
+    private final long total;
+
+    /**
+     * 命中记录
+     */
+    private final List<RawHit> hits;
+
+    /**
+     * 将命中记录解析为投影对象
+     *
+     * @param type 投影类型
+     * @return 投影对象集合
+     */
+    public <R> List<R> as(Class<R> type) {
+        return hits.stream().map(hit -> hit.as(type)).collect(Collectors.toList());
+    }
+
+}
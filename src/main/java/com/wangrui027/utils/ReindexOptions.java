@@ -0,0 +1,71 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.function.Consumer;
+
+/**
+ * reindex 配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class ReindexOptions {
+
+    /**
+     * 切片数，0 表示服务端模式由 ES 按分片数自动切分，客户端模式使用 scanOptions 中的切片数
+     */
+    @Builder.Default
+    private int slices = 0;
+
+    /**
+     * 每秒处理的文档数上限，小于等于 0 表示不限速
+     */
+    @Builder.Default
+    private float requestsPerSecond = -1;
+
+    /**
+     * 每批读取和写入的文档数
+     */
+    @Builder.Default
+    private int batchSize = 1000;
+
+    /**
+     * 只复制满足条件的文档，为 null 时复制全部文档
+     */
+    private Query query;
+
+    /**
+     * 完成后原子地指向目标索引的别名，为 null 时不切换别名
+     */
+    private String alias;
+
+    /**
+     * 切换别名时是否在同一个请求中删除别名原来指向的索引
+     */
+    @Builder.Default
+    private boolean deleteOldIndices = false;
+
+    /**
+     * 服务端模式查询任务进度的间隔，单位毫秒
+     */
+    @Builder.Default
+    private long pollIntervalMillis = 1000;
+
+    /**
+     * 进度回调，服务端模式每次轮询后调用，客户端模式每扫描 batchSize 个文档调用一次，结束时再调用一次
+     */
+    private Consumer<TaskProgress> progress;
+
+    /**
+     * 客户端模式的检索配置，为 null 时按 batchSize 分页
+     */
+    private ScanOptions scanOptions;
+
+    /**
+     * 客户端模式的写入配置，为 null 时按 batchSize 分批
+     */
+    private BulkIngesterConfig ingesterConfig;
+
+}
@@ -0,0 +1,196 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 索引复制，服务端模式提交 _reindex 任务，客户端模式由并行切片检索读取、批量写入器写入
+ */
+final class Reindexer {
+
+    /**
+     * 客户端模式最多保留的失败原因数
+     */
+    private static final int MAX_FAILURES = 100;
+
+    private Reindexer() {
+    }
+
+    /**
+     * 提交服务端 _reindex 任务，不等待完成，提交后和任务结束后失效目标索引的缓存
+     */
+    static EsTask start(ESUtil util, String source, String dest, ReindexOptions options) throws IOException {
+        ObjectNode body = RawJson.MAPPER.createObjectNode();
+        ObjectNode sourceNode = body.putObject("source");
+        sourceNode.put("index", source);
+        sourceNode.put("size", options.getBatchSize());
+        if (options.getQuery() != null) {
+            sourceNode.set("query", RawJson.MAPPER.readTree(util.toJson(options.getQuery())));
+        }
+        body.putObject("dest").put("index", dest);
+        Map<String, String> params = new HashMap<>();
+        params.put("wait_for_completion", "false");
+        params.put("refresh", "true");
+        params.put("slices", options.getSlices() > 0 ? String.valueOf(options.getSlices()) : "auto");
+        params.put("requests_per_second", options.getRequestsPerSecond() > 0 ? String.valueOf(options.getRequestsPerSecond()) : "-1");
+        JsonNode response = util.performJson("POST", "/_reindex", params, body.toString());
+        util.afterByQuery(dest);
+        return new EsTask(util, response.path("task").asText(), "_reindex", () -> util.afterByQuery(dest));
+    }
+
+    /**
+     * 服务端模式，等待任务完成，没有失败时切换别名
+     */
+    static TaskProgress server(ESUtil util, String source, String dest, ReindexOptions options) throws IOException {
+        TaskProgress progress = start(util, source, dest, options).await(options.getPollIntervalMillis(), options.getProgress());
+        finish(util, dest, options, progress);
+        return progress;
+    }
+
+    /**
+     * 客户端模式，transform 返回 null 的文档不写入
+     */
+    static <T> TaskProgress client(ESUtil util, String source, String dest, Class<T> tClass, Function<T, ?> transform,
+                                   ReindexOptions options) throws IOException {
+        ScanOptions scanOptions = options.getScanOptions() != null
+                ? options.getScanOptions()
+                : ScanOptions.builder().pageSize(options.getBatchSize()).build();
+        if (options.getSlices() > 0) {
+            scanOptions = scanOptions.toBuilder().slices(options.getSlices()).build();
+        }
+        BulkIngesterConfig ingesterConfig = options.getIngesterConfig() != null
+                ? options.getIngesterConfig()
+                : BulkIngesterConfig.builder().maxActions(options.getBatchSize()).build();
+        AtomicLong scanned = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        BulkListener delegate = ingesterConfig.getListener();
+        BulkIngester<Object> ingester = new BulkIngester<>(util, dest, ingesterConfig.toBuilder()
+                .listener(new BulkListener() {
+                    @Override
+                    public void beforeBulk(long executionId, int docs, long bytes) {
+                        if (delegate != null) {
+                            delegate.beforeBulk(executionId, docs, bytes);
+                        }
+                    }
+
+                    @Override
+                    public void afterBulk(long executionId, BulkStats stats, BulkResponse response) {
+                        if (response.errors()) {
+                            for (BulkResponseItem item : response.items()) {
+                                if (item.error() != null && failures.size() < MAX_FAILURES) {
+                                    failures.add(item.id() + " " + item.error().reason());
+                                }
+                            }
+                        }
+                        if (delegate != null) {
+                            delegate.afterBulk(executionId, stats, response);
+                        }
+                    }
+
+                    @Override
+                    public void afterBulk(long executionId, BulkStats stats, Throwable failure) {
+                        if (failures.size() < MAX_FAILURES) {
+                            failures.add(String.valueOf(failure));
+                        }
+                        if (delegate != null) {
+                            delegate.afterBulk(executionId, stats, failure);
+                        }
+                    }
+                })
+                .build());
+        Throttle throttle = new Throttle(options.getRequestsPerSecond());
+        Query query = options.getQuery();
+        try {
+            new ParallelScan<>(util, source, b -> query == null ? b : b.query(query), tClass, scanOptions).forEachHit((sliceId, hit) -> {
+                throttle.acquire();
+                scanned.incrementAndGet();
+                Object document = transform == null ? hit.source() : transform.apply(hit.source());
+                if (document == null) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                ingester.add(document, hit.id());
+                if (options.getProgress() != null && scanned.get() % options.getBatchSize() == 0) {
+                    options.getProgress().accept(progress(ingester, scanned.get(), skipped.get(), false, failures));
+                }
+            });
+        } finally {
+            ingester.close();
+        }
+        TaskProgress progress = progress(ingester, scanned.get(), skipped.get(), true, failures);
+        if (options.getProgress() != null) {
+            options.getProgress().accept(progress);
+        }
+        util.refresh(dest);
+        finish(util, dest, options, progress);
+        return progress;
+    }
+
+    private static TaskProgress progress(BulkIngester<?> ingester, long scanned, long skipped, boolean completed, List<String> failures) {
+        List<String> snapshot;
+        synchronized (failures) {
+            snapshot = new ArrayList<>(failures);
+        }
+        return new TaskProgress(null, completed, scanned, ingester.getTotalDocs() - ingester.getTotalFailures(), 0, 0, 0,
+                skipped, ingester.getTotalRequests(), null, snapshot);
+    }
+
+    private static void finish(ESUtil util, String dest, ReindexOptions options, TaskProgress progress) throws IOException {
+        if (progress.getCanceled() != null) {
+            throw new IOException("reindex 任务已取消: " + progress.getCanceled());
+        }
+        if (progress.hasFailures()) {
+            throw new IOException("reindex 存在失败的文档，未切换别名: " + progress.getFailures());
+        }
+        if (options.getAlias() != null) {
+            util.swapAlias(options.getAlias(), dest, options.isDeleteOldIndices());
+        }
+    }
+
+    /**
+     * 按文档数限速，多个切片线程共享
+     */
+    private static class Throttle {
+
+        private final long intervalNanos;
+
+        private final AtomicLong next = new AtomicLong(System.nanoTime());
+
+        private Throttle(float requestsPerSecond) {
+            this.intervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+        }
+
+        private void acquire() {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long slot = next.getAndUpdate(prev -> Math.max(prev, now) + intervalNanos);
+            long waitNanos = Math.max(slot, now) - now;
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("reindex 限速等待被中断", e);
+                }
+            }
+        }
+
+    }
+
+}
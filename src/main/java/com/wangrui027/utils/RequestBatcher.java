@@ -0,0 +1,333 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.ErrorCause;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单文档请求合并器，把多个线程并发发起的单文档保存、删除合并为一次 _bulk，单文档查询合并为一次 _mget，
+ * 每个调用方仍然得到各自的结果或异常。
+ * <br/>
+ * 请求在合并窗口结束或达到单批上限时提交，使用完毕后需关闭以提交剩余请求并释放线程。
+ */
+public class RequestBatcher implements Closeable {
+
+    private final ESUtil util;
+
+    private final RequestBatcherConfig config;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+
+    private List<PendingWrite> writes = new ArrayList<>();
+
+    private Map<GetKey, List<PendingGet>> gets = new HashMap<>();
+
+    private int getCount;
+
+    private boolean flushScheduled;
+
+    private volatile boolean closed;
+
+    RequestBatcher(ESUtil util, RequestBatcherConfig config) {
+        this.util = util;
+        this.config = config;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(BulkIngester.daemonThreadFactory("es-request-batcher"));
+    }
+
+    /**
+     * 保存文档，与其它并发请求合并提交
+     *
+     * @param indicesName 索引名
+     * @param object      要保存的对象
+     * @param id          文档 ID
+     * @return 文档 ID
+     */
+    public <T> CompletableFuture<String> saveAsync(String indicesName, T object, String id) {
+        String index;
+        try {
+            index = util.writeIndex(indicesName);
+        } catch (IOException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        CompletableFuture<BulkResponseItem> future = enqueueWrite(BulkOperation.of(bo -> bo.index(e -> e
+                .index(index)
+                .id(id)
+                .document(object)
+        )));
+        return future.thenApply(BulkResponseItem::id);
+    }
+
+    /**
+     * 删除文档，与其它并发请求合并提交
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     * @return 文档是否删除成功
+     */
+    public CompletableFuture<Boolean> deleteAsync(String indicesName, String id) {
+        CompletableFuture<BulkResponseItem> future = enqueueWrite(BulkOperation.of(bo -> bo.delete(e -> e
+                .index(indicesName)
+                .id(id)
+        )));
+        return future.thenApply(item -> "deleted".equals(item.result()));
+    }
+
+    /**
+     * 通过 ID 检索文档，与其它并发请求合并为一次 _mget
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     * @param tClass      返回的对象类型
+     * @return 文档对象，不存在时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getByIdAsync(String indicesName, String id, Class<T> tClass) {
+        PendingGet pending = new PendingGet(id);
+        boolean flushNow;
+        synchronized (lock) {
+            ensureOpen();
+            gets.computeIfAbsent(new GetKey(indicesName, tClass), k -> new ArrayList<>()).add(pending);
+            getCount++;
+            flushNow = getCount >= config.getMaxBatchSize();
+            scheduleFlush();
+        }
+        if (flushNow) {
+            flushGets();
+        }
+        return (CompletableFuture<T>) pending.future;
+    }
+
+    /**
+     * 保存文档，阻塞等待所在批次返回
+     *
+     * @param indicesName 索引名
+     * @param object      要保存的对象
+     * @param id          文档 ID
+     * @return 文档 ID
+     */
+    public <T> String save(String indicesName, T object, String id) throws IOException {
+        return ESUtil.await(saveAsync(indicesName, object, id));
+    }
+
+    /**
+     * 删除文档，阻塞等待所在批次返回
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     * @return 文档是否删除成功
+     */
+    public boolean delete(String indicesName, String id) throws IOException {
+        return ESUtil.await(deleteAsync(indicesName, id));
+    }
+
+    /**
+     * 通过 ID 检索文档，阻塞等待所在批次返回
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     * @param tClass      返回的对象类型
+     * @return 文档对象，不存在时为 null
+     */
+    public <T> T getById(String indicesName, String id, Class<T> tClass) throws IOException {
+        return ESUtil.await(getByIdAsync(indicesName, id, tClass));
+    }
+
+    /**
+     * 立即提交已合并的请求
+     */
+    public void flush() {
+        flushWrites();
+        flushGets();
+    }
+
+    /**
+     * 提交剩余请求并释放线程
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+    }
+
+    private CompletableFuture<BulkResponseItem> enqueueWrite(BulkOperation operation) {
+        PendingWrite pending = new PendingWrite(operation);
+        boolean flushNow;
+        synchronized (lock) {
+            ensureOpen();
+            writes.add(pending);
+            flushNow = writes.size() >= config.getMaxBatchSize();
+            scheduleFlush();
+        }
+        if (flushNow) {
+            flushWrites();
+        }
+        return pending.future;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("RequestBatcher 已关闭");
+        }
+    }
+
+    /**
+     * 窗口内首个请求到达时安排一次定时提交，需持有 lock 调用
+     */
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(() -> {
+                synchronized (lock) {
+                    flushScheduled = false;
+                }
+                flush();
+            }, config.getWindowMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushWrites() {
+        List<PendingWrite> batch;
+        synchronized (lock) {
+            if (writes.isEmpty()) {
+                return;
+            }
+            batch = writes;
+            writes = new ArrayList<>();
+        }
+        List<BulkOperation> operations = new ArrayList<>(batch.size());
+        for (PendingWrite pending : batch) {
+            operations.add(pending.operation);
+        }
+        util.bulkAsync(operations).whenComplete((response, e) -> {
+            for (int i = 0; i < batch.size(); i++) {
+                CompletableFuture<BulkResponseItem> future = batch.get(i).future;
+                if (e != null) {
+                    future.completeExceptionally(e);
+                    continue;
+                }
+                BulkResponseItem item = response.items().get(i);
+                if (item.error() != null) {
+                    future.completeExceptionally(toException(item.error()));
+                } else {
+                    future.complete(item);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按索引名和类型分组提交 _mget，与 getById 一样经过读缓存并记录指标
+     */
+    @SuppressWarnings("unchecked")
+    private void flushGets() {
+        Map<GetKey, List<PendingGet>> batch;
+        synchronized (lock) {
+            if (gets.isEmpty()) {
+                return;
+            }
+            batch = gets;
+            gets = new HashMap<>();
+            getCount = 0;
+        }
+        for (Map.Entry<GetKey, List<PendingGet>> entry : batch.entrySet()) {
+            GetKey key = entry.getKey();
+            List<PendingGet> pendings = entry.getValue();
+            List<String> ids = new ArrayList<>(pendings.size());
+            for (PendingGet pending : pendings) {
+                ids.add(pending.id);
+            }
+            List<CompletableFuture<Object>> results = util.getByIdsAsync(key.indicesName, ids, (Class<Object>) key.tClass);
+            for (int i = 0; i < pendings.size(); i++) {
+                CompletableFuture<Object> future = pendings.get(i).future;
+                results.get(i).whenComplete((source, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(source);
+                    }
+                });
+            }
+        }
+    }
+
+    private static IOException toException(ErrorCause error) {
+        return new IOException(error.type() + ": " + error.reason());
+    }
+
+    private static class PendingWrite {
+
+        private final BulkOperation operation;
+
+        private final CompletableFuture<BulkResponseItem> future = new CompletableFuture<>();
+
+        private PendingWrite(BulkOperation operation) {
+            this.operation = operation;
+        }
+
+    }
+
+    private static class PendingGet {
+
+        private final String id;
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private PendingGet(String id) {
+            this.id = id;
+        }
+
+    }
+
+    private static class GetKey {
+
+        private final String indicesName;
+
+        private final Class<?> tClass;
+
+        private GetKey(String indicesName, Class<?> tClass) {
+            this.indicesName = indicesName;
+            this.tClass = tClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GetKey)) {
+                return false;
+            }
+            GetKey that = (GetKey) o;
+            return Objects.equals(indicesName, that.indicesName) && tClass.equals(that.tClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(indicesName, tClass);
+        }
+
+    }
+
+}
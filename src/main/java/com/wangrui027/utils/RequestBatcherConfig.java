@@ -0,0 +1,25 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * {@link RequestBatcher} 配置
+ */
+@Getter
+@Builder
+public class RequestBatcherConfig {
+
+    /**
+     * 合并窗口，单位毫秒，窗口内到达的请求合并为一次 _bulk 或 _mget
+     */
+    @Builder.Default
+    private long windowMillis = 5;
+
+    /**
+     * 单批最大请求数，达到后立即提交，不等待窗口结束
+     */
+    @Builder.Default
+    private int maxBatchSize = 500;
+
+}
@@ -0,0 +1,18 @@
+package com.wangrui027.utils;
+
+/**
+ * 流式检索的翻页方式
+ */
+public enum ScanMode {
+
+    /**
+     * point in time + search_after，ES 7.10 及以上版本可用，打开失败时自动回退为 scroll
+     */
+    PIT,
+
+    /**
+     * scroll
+     */
+    SCROLL
+
+}
@@ -0,0 +1,51 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 流式检索配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class ScanOptions {
+
+    /**
+     * 每页文档数
+     */
+    @Builder.Default
+    private int pageSize = 1000;
+
+    /**
+     * PIT 或 scroll 上下文的保持时间
+     */
+    @Builder.Default
+    private String keepAlive = "1m";
+
+    /**
+     * 翻页方式
+     */
+    @Builder.Default
+    private ScanMode mode = ScanMode.PIT;
+
+    /**
+     * 切片数，仅并行检索使用，建议不超过索引的分片数
+     */
+    @Builder.Default
+    private int slices = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 切片与消费者之间的队列容量，仅合并为单个流时使用
+     */
+    @Builder.Default
+    private int queueCapacity = 1000;
+
+    /**
+     * 驱动切片的线程池，为 null 时按切片数创建线程池并在检索结束后关闭。
+     * 运行在 Java 21 及以上版本时可以传入 Executors.newVirtualThreadPerTaskExecutor()
+     */
+    private ExecutorService executor;
+
+}
@@ -0,0 +1,227 @@
+package com.wangrui027.utils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 检索结果缓存，以索引名、返回类型和序列化后的检索条件为 key，LRU 淘汰并按有效期过期。
+ * <br/>
+ * 相同 key 的并发请求共用一次在途请求；通过同一个 {@link ESUtil} 写入或 refresh 时失效涉及该索引的结果，
+ * 检索条件未指定索引或使用通配符时，任何写入都会使其失效。别名和其它客户端的写入只能依靠有效期失效。
+ */
+class SearchCache {
+
+    private final SearchCacheConfig config;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, CompletableFuture<List<?>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 每个索引最近一次写入的失效序号和时间
+     */
+    private final Map<String, Write> writes = new HashMap<>();
+
+    private Write lastWrite = new Write(0, 0);
+
+    /**
+     * 最近一次失效全部结果的序号和时间，对所有结果生效
+     */
+    private Write globalWrite;
+
+    private long epoch;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long sharedCount;
+
+    private long evictionCount;
+
+    SearchCache(SearchCacheConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 获取缓存的检索结果，未命中时与相同的在途请求共用结果，没有在途请求时调用 loader
+     *
+     * @param key     检索条件的规范化序列化结果
+     * @param indices 检索的索引，为空表示全部索引
+     * @param loader  发送检索请求
+     * @return 不可修改的检索结果
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<List<T>> get(String key, List<String> indices, Supplier<CompletableFuture<List<T>>> loader) {
+        long startEpoch;
+        synchronized (this) {
+            List<?> cached = lookup(key);
+            if (cached != null) {
+                hitCount++;
+                return CompletableFuture.completedFuture((List<T>) cached);
+            }
+            startEpoch = epoch;
+        }
+        CompletableFuture<List<?>> future = new CompletableFuture<>();
+        CompletableFuture<List<?>> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            synchronized (this) {
+                sharedCount++;
+            }
+            return existing.thenApply(list -> (List<T>) list);
+        }
+        synchronized (this) {
+            missCount++;
+        }
+        CompletableFuture<List<T>> loaded;
+        try {
+            loaded = loader.get();
+        } catch (RuntimeException e) {
+            loaded = new CompletableFuture<>();
+            loaded.completeExceptionally(e);
+        }
+        loaded.whenComplete((list, e) -> {
+            if (e != null) {
+                inFlight.remove(key, future);
+                future.completeExceptionally(e);
+                return;
+            }
+            List<T> result = Collections.unmodifiableList(list);
+            put(key, indices, result, startEpoch);
+            inFlight.remove(key, future);
+            future.complete(result);
+        });
+        return future.thenApply(list -> (List<T>) list);
+    }
+
+    /**
+     * 同步获取检索结果，loader 在调用线程中执行
+     */
+    <T> List<T> get(String key, List<String> indices, Loader<List<T>> loader) throws IOException {
+        return ESUtil.await(get(key, indices, () -> {
+            CompletableFuture<List<T>> future = new CompletableFuture<>();
+            try {
+                future.complete(loader.load());
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }));
+    }
+
+    /**
+     * 写入或 refresh 索引后失效涉及该索引的结果，索引名为 null 时失效全部结果
+     */
+    synchronized void invalidate(String indicesName) {
+        epoch++;
+        Write write = new Write(epoch, System.currentTimeMillis());
+        lastWrite = write;
+        if (indicesName == null) {
+            globalWrite = write;
+            writes.clear();
+            entries.clear();
+            return;
+        }
+        writes.put(indicesName, write);
+        entries.values().removeIf(entry -> entry.matchesAll || entry.indices.contains(indicesName));
+    }
+
+    synchronized SearchCacheStats stats() {
+        return new SearchCacheStats(hitCount, missCount, sharedCount, evictionCount, entries.size());
+    }
+
+    private List<?> lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 读取期间发生过写入，或读取结果可能还未包含最近的写入时不缓存
+     */
+    private synchronized void put(String key, List<String> indices, List<?> value, long startEpoch) {
+        Entry entry = new Entry(indices, value, System.currentTimeMillis() + config.getTtlMillis());
+        long now = System.currentTimeMillis();
+        if (isStale(globalWrite, startEpoch, now)) {
+            return;
+        }
+        if (entry.matchesAll) {
+            if (isStale(lastWrite, startEpoch, now)) {
+                return;
+            }
+        } else {
+            for (String index : entry.indices) {
+                if (isStale(writes.get(index), startEpoch, now)) {
+                    return;
+                }
+            }
+        }
+        entries.put(key, entry);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > config.getMaxSize() && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    private boolean isStale(Write write, long startEpoch, long now) {
+        return write != null && (write.epoch > startEpoch || now - write.millis < config.getRefreshIntervalMillis());
+    }
+
+    @FunctionalInterface
+    interface Loader<V> {
+
+        V load() throws IOException;
+
+    }
+
+    private static class Entry {
+
+        private final Set<String> indices;
+
+        private final boolean matchesAll;
+
+        private final List<?> value;
+
+        private final long expireAt;
+
+        private Entry(List<String> indices, List<?> value, long expireAt) {
+            this.indices = new HashSet<>(indices);
+            this.matchesAll = indices.isEmpty() || indices.stream().anyMatch(index -> index.contains("*") || index.contains(",") || "_all".equals(index));
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+    }
+
+    private static class Write {
+
+        private final long epoch;
+
+        private final long millis;
+
+        private Write(long epoch, long millis) {
+            this.epoch = epoch;
+            this.millis = millis;
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 检索结果缓存配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class SearchCacheConfig {
+
+    /**
+     * 最大缓存的检索结果数
+     */
+    @Builder.Default
+    private int maxSize = 1000;
+
+    /**
+     * 缓存有效期，单位毫秒
+     */
+    @Builder.Default
+    private long ttlMillis = 5000;
+
+    /**
+     * 写入后在该时间内返回的检索结果不缓存，应与索引的 refresh_interval 一致，写入要等到 refresh 后才能被检索到
+     */
+    @Builder.Default
+    private long refreshIntervalMillis = 1000;
+
+}
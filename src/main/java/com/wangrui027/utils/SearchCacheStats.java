@@ -0,0 +1,40 @@
+package com.wangrui027.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 检索结果缓存统计
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class SearchCacheStats {
+
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+
+    /**
+     * 未命中并实际发送到 ES 的次数
+     */
+    private final long missCount;
+
+    /**
+     * 与相同的在途请求共用结果的次数
+     */
+    private final long sharedCount;
+
+    /**
+     * 因容量被淘汰的结果数
+     */
+    private final long evictionCount;
+
+    /**
+     * 当前缓存的结果数
+     */
+    private final int size;
+
+}
@@ -0,0 +1,317 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.ScrollResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 流式检索迭代器，基于 point in time + search_after 或 scroll 逐页拉取文档。
+ * <br/>
+ * 消费当前页的同时在后台预取下一页，遍历结束或调用 {@link #close()} 时释放 PIT / scroll 上下文。
+ * 作为并行检索的切片时不预取，由切片线程同步拉取。
+ *
+ * @param <T> 文档类型
+ */
+public class SearchIterator<T> implements Iterator<T>, Closeable {
+
+    private final ESUtil util;
+
+    private final String indicesName;
+
+    private final Function<SearchRequest.Builder, SearchRequest.Builder> fn;
+
+    private final Class<T> tClass;
+
+    private final ScanOptions options;
+
+    private final boolean sorted;
+
+    /**
+     * 预取线程，不预取时为 null
+     */
+    private final ExecutorService prefetcher;
+
+    private final int sliceId;
+
+    private final int sliceMax;
+
+    private final boolean ownsPit;
+
+    private volatile ScanMode mode;
+
+    /**
+     * 当前的 PIT，多个切片共享时为同一个引用，每次检索后更新为 ES 返回的最新 ID
+     */
+    private final AtomicReference<String> pitId;
+
+    private volatile String scrollId;
+
+    private volatile Hit<T> lastHit;
+
+    private CompletableFuture<List<Hit<T>>> nextPage;
+
+    /**
+     * 不预取时待拉取的下一页
+     */
+    private Supplier<List<Hit<T>>> deferredPage;
+
+    private Iterator<Hit<T>> current = Collections.emptyIterator();
+
+    private boolean exhausted;
+
+    private boolean closed;
+
+    SearchIterator(ESUtil util, String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass, ScanOptions options) {
+        this(util, indicesName, fn, tClass, options, 0, 1, null, true);
+    }
+
+    /**
+     * @param sliceId   切片序号
+     * @param sliceMax  切片总数，小于等于 1 表示不切片
+     * @param sharedPit 多个切片共享的 PIT，由调用方负责关闭，为 null 时由迭代器自行打开和关闭
+     * @param prefetch  是否在后台线程预取下一页
+     */
+    SearchIterator(ESUtil util, String indicesName, Function<SearchRequest.Builder, SearchRequest.Builder> fn, Class<T> tClass, ScanOptions options,
+                   int sliceId, int sliceMax, AtomicReference<String> sharedPit, boolean prefetch) {
+        this.util = util;
+        this.indicesName = indicesName;
+        this.fn = fn;
+        this.tClass = tClass;
+        this.options = options;
+        this.mode = sharedPit != null ? ScanMode.PIT : options.getMode();
+        this.sliceId = sliceId;
+        this.sliceMax = sliceMax;
+        this.pitId = sharedPit != null ? sharedPit : new AtomicReference<>();
+        this.ownsPit = sharedPit == null;
+        this.sorted = !fn.apply(new SearchRequest.Builder()).build().sort().isEmpty();
+        this.prefetcher = prefetch ? Executors.newSingleThreadExecutor(BulkIngester.daemonThreadFactory("es-search-prefetch")) : null;
+        schedule(this::fetchFirstPage);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (exhausted || closed) {
+                return false;
+            }
+            List<Hit<T>> page = awaitNextPage();
+            if (page.size() < options.getPageSize()) {
+                exhausted = true;
+                nextPage = null;
+                deferredPage = null;
+                releaseQuietly();
+            } else {
+                schedule(this::fetchNextPage);
+            }
+            current = page.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        return nextHit().source();
+    }
+
+    /**
+     * 获取下一条命中记录，包含 _id、_score 等元数据
+     *
+     * @return 命中记录
+     */
+    public Hit<T> nextHit() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * 停止预取并释放 PIT / scroll 上下文
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (nextPage != null) {
+                nextPage.handle((page, e) -> null).join();
+            }
+            if (!exhausted) {
+                releaseContext();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.shutdown();
+            }
+        }
+    }
+
+    private void schedule(Supplier<List<Hit<T>>> fetch) {
+        if (prefetcher != null) {
+            nextPage = CompletableFuture.supplyAsync(fetch, prefetcher);
+        } else {
+            deferredPage = fetch;
+        }
+    }
+
+    private List<Hit<T>> awaitNextPage() {
+        if (deferredPage != null) {
+            Supplier<List<Hit<T>>> fetch = deferredPage;
+            deferredPage = null;
+            try {
+                return fetch.get();
+            } catch (RuntimeException e) {
+                exhausted = true;
+                releaseQuietly();
+                throw e;
+            }
+        }
+        try {
+            return nextPage.join();
+        } catch (CompletionException e) {
+            exhausted = true;
+            releaseQuietly();
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw (UncheckedIOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private List<Hit<T>> fetchFirstPage() {
+        try {
+            if (mode == ScanMode.PIT && pitId.get() == null) {
+                try {
+                    pitId.set(util.timed(EsMetrics.POINT_IN_TIME, () -> util.getClient().openPointInTime(o -> o
+                            .index(indicesName)
+                            .keepAlive(k -> k.time(options.getKeepAlive()))
+                    )).id());
+                } catch (ElasticsearchException e) {
+                    // 7.10 以下版本不支持 point in time，回退为 scroll
+                    mode = ScanMode.SCROLL;
+                }
+            }
+            if (mode == ScanMode.SCROLL) {
+                SearchResponse<T> response = util.timed(EsMetrics.SEARCH, () -> util.getClient().search(SearchRequest.of(b -> {
+                    fn.apply(b)
+                            .index(indicesName)
+                            .size(options.getPageSize())
+                            .scroll(t -> t.time(options.getKeepAlive()));
+                    applySlice(b);
+                    if (!sorted) {
+                        b.sort(so -> so.field(f -> f.field("_doc")));
+                    }
+                    return b;
+                }), tClass));
+                scrollId = response.scrollId();
+                return response.hits().hits();
+            }
+            return fetchNextPage();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Hit<T>> fetchNextPage() {
+        try {
+            List<Hit<T>> hits;
+            if (mode == ScanMode.SCROLL) {
+                String scroll = scrollId;
+                ScrollResponse<T> response = util.timed(EsMetrics.SCROLL, () -> util.getClient().scroll(s -> s
+                        .scrollId(scroll)
+                        .scroll(t -> t.time(options.getKeepAlive())), tClass));
+                if (response.scrollId() != null) {
+                    scrollId = response.scrollId();
+                }
+                hits = response.hits().hits();
+            } else {
+                Hit<T> after = lastHit;
+                String pit = pitId.get();
+                SearchResponse<T> response = util.timed(EsMetrics.SEARCH, () -> util.getClient().search(SearchRequest.of(b -> {
+                    fn.apply(b)
+                            .size(options.getPageSize())
+                            .pit(p -> p
+                                    .id(pit)
+                                    .keepAlive(k -> k.time(options.getKeepAlive())));
+                    applySlice(b);
+                    if (!sorted) {
+                        b.sort(so -> so.field(f -> f.field("_doc")));
+                    }
+                    if (after != null) {
+                        b.searchAfter(after.sort());
+                    }
+                    return b;
+                }), tClass));
+                if (response.pitId() != null) {
+                    // 共享 PIT 时其它切片的后续请求和最终关闭都使用最新的 ID
+                    pitId.compareAndSet(pit, response.pitId());
+                }
+                hits = response.hits().hits();
+            }
+            if (!hits.isEmpty()) {
+                lastHit = hits.get(hits.size() - 1);
+            }
+            return hits;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void applySlice(SearchRequest.Builder b) {
+        if (sliceMax > 1) {
+            b.slice(sl -> sl
+                    .id(String.valueOf(sliceId))
+                    .max(sliceMax));
+        }
+    }
+
+    private void releaseQuietly() {
+        try {
+            releaseContext();
+        } catch (RuntimeException ignored) {
+            // 上下文会在 keepAlive 到期后由 ES 自动释放
+        }
+    }
+
+    private void releaseContext() {
+        String pit = ownsPit ? pitId.getAndSet(null) : null;
+        String scroll = scrollId;
+        scrollId = null;
+        try {
+            if (pit != null) {
+                util.timed(EsMetrics.POINT_IN_TIME, () -> util.getClient().closePointInTime(c -> c.id(pit)));
+            }
+            if (scroll != null) {
+                util.timed(EsMetrics.SCROLL, () -> util.getClient().clearScroll(c -> c.scrollId(scroll)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 按分片分组 bulk 配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class ShardBulkConfig {
+
+    /**
+     * 分组方式
+     */
+    @Builder.Default
+    private ShardBulkMode mode = ShardBulkMode.SHARD;
+
+    /**
+     * 同时执行的最大请求数，小于 1 时不限制
+     */
+    @Builder.Default
+    private int maxConcurrentRequests = 8;
+
+    /**
+     * 索引分片数和主分片位置的缓存时间，单位毫秒，分片迁移后分组不再准确但不影响写入结果
+     */
+    @Builder.Default
+    private long routingTtlMillis = 60_000;
+
+}
@@ -0,0 +1,18 @@
+package com.wangrui027.utils;
+
+/**
+ * 按分片分组 bulk 的分组方式
+ */
+public enum ShardBulkMode {
+
+    /**
+     * 每个主分片一个请求
+     */
+    SHARD,
+
+    /**
+     * 主分片所在的每个节点一个请求，分片数远多于节点数时请求更少
+     */
+    NODE
+
+}
@@ -0,0 +1,371 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorCause;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperationBase;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.elasticsearch.client.ResponseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按 ES 的路由规则在客户端计算文档所在的主分片，把 bulk 操作按分片或节点分组后并发提交，
+ * 单个分片或节点变慢时只拖慢所在的分组
+ */
+final class ShardRouter {
+
+    /**
+     * 无法计算分片的操作所在的分组，如自动生成 ID、索引不存在或别名指向多个索引
+     */
+    private static final String UNROUTED = "";
+
+    private static final String FILTER_PATH = "metadata.indices.*.routing_num_shards,metadata.indices.*.settings,"
+            + "routing_table.indices.*.shards.*.primary,routing_table.indices.*.shards.*.node";
+
+    private final ESUtil util;
+
+    private final Map<String, IndexRouting> indices = new ConcurrentHashMap<>();
+
+    ShardRouter(ESUtil util) {
+        this.util = util;
+    }
+
+    /**
+     * 分组并发提交，某个分组整体失败时该分组的每个条目记为失败，全部分组失败时返回首个异常
+     *
+     * @param defaultIndex 操作未指定索引时使用的索引名，作为请求的默认索引发送
+     * @return 按原顺序合并的批量操作返回对象，took 为各分组的最大值
+     */
+    CompletableFuture<BulkResponse> dispatch(List<BulkOperation> operations, String defaultIndex, ShardBulkConfig config) {
+        if (defaultIndex == null) {
+            for (BulkOperation operation : operations) {
+                if (((BulkOperationBase) operation._get()).index() == null) {
+                    CompletableFuture<BulkResponse> future = new CompletableFuture<>();
+                    future.completeExceptionally(new IllegalArgumentException("批量操作未指定索引，且没有默认索引"));
+                    return future;
+                }
+            }
+        }
+        Map<String, List<Integer>> groups = group(operations, defaultIndex, config);
+        List<List<Integer>> positions = new ArrayList<>(groups.values());
+        List<CompletableFuture<BulkResponse>> results = new ArrayList<>(positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        AtomicInteger next = new AtomicInteger();
+        int concurrency = config.getMaxConcurrentRequests() < 1
+                ? positions.size()
+                : Math.min(config.getMaxConcurrentRequests(), positions.size());
+        for (int i = 0; i < concurrency; i++) {
+            submitNext(operations, defaultIndex, positions, results, next);
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .handle((ignored, e) -> merge(operations, defaultIndex, positions, results));
+    }
+
+    /**
+     * 失效索引的分片信息，索引名为 null 时全部失效
+     */
+    void invalidate(String indicesName) {
+        if (indicesName == null) {
+            indices.clear();
+        } else {
+            indices.remove(indicesName);
+        }
+    }
+
+    private Map<String, List<Integer>> group(List<BulkOperation> operations, String defaultIndex, ShardBulkConfig config) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        Map<String, IndexRouting> routings = new HashMap<>();
+        for (int i = 0; i < operations.size(); i++) {
+            BulkOperationBase base = (BulkOperationBase) operations.get(i)._get();
+            String index = base.index() != null ? base.index() : defaultIndex;
+            String key = UNROUTED;
+            if (index != null && (base.id() != null || base.routing() != null)) {
+                IndexRouting routing = routings.computeIfAbsent(index, name -> routing(name, config.getRoutingTtlMillis()));
+                int shard = routing.shardId(base.id(), base.routing());
+                if (shard >= 0) {
+                    String node = routing.primaryNodes[shard];
+                    key = config.getMode() == ShardBulkMode.NODE && node != null
+                            ? node
+                            : routing.index + "#" + shard;
+                }
+            }
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    private void submitNext(List<BulkOperation> operations, String defaultIndex, List<List<Integer>> positions,
+                            List<CompletableFuture<BulkResponse>> results, AtomicInteger next) {
+        int group = next.getAndIncrement();
+        if (group >= positions.size()) {
+            return;
+        }
+        List<BulkOperation> batch = new ArrayList<>(positions.get(group).size());
+        for (Integer position : positions.get(group)) {
+            batch.add(operations.get(position));
+        }
+        util.bulkAsync(batch, defaultIndex).whenComplete((response, e) -> {
+            if (e != null) {
+                results.get(group).completeExceptionally(e);
+            } else {
+                results.get(group).complete(response);
+            }
+            submitNext(operations, defaultIndex, positions, results, next);
+        });
+    }
+
+    private static BulkResponse merge(List<BulkOperation> operations, String defaultIndex, List<List<Integer>> positions,
+                                      List<CompletableFuture<BulkResponse>> results) {
+        BulkResponseItem[] items = new BulkResponseItem[operations.size()];
+        long took = 0;
+        boolean errors = false;
+        Throwable firstFailure = null;
+        int failedGroups = 0;
+        for (int group = 0; group < positions.size(); group++) {
+            List<Integer> groupPositions = positions.get(group);
+            BulkResponse response;
+            try {
+                response = results.get(group).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (firstFailure == null) {
+                    firstFailure = cause;
+                }
+                failedGroups++;
+                errors = true;
+                for (Integer position : groupPositions) {
+                    items[position] = failedItem(operations.get(position), defaultIndex, cause);
+                }
+                continue;
+            }
+            took = Math.max(took, response.took());
+            errors |= response.errors();
+            for (int i = 0; i < groupPositions.size(); i++) {
+                items[groupPositions.get(i)] = response.items().get(i);
+            }
+        }
+        if (failedGroups > 0 && failedGroups == positions.size()) {
+            throw firstFailure instanceof RuntimeException
+                    ? (RuntimeException) firstFailure
+                    : new CompletionException(firstFailure);
+        }
+        long finalTook = took;
+        boolean finalErrors = errors;
+        List<BulkResponseItem> list = new ArrayList<>(items.length);
+        Collections.addAll(list, items);
+        return BulkResponse.of(b -> b.took(finalTook).errors(finalErrors).items(list));
+    }
+
+    /**
+     * 整体失败的请求按条目记录失败原因，ES 返回的错误保留状态码，连接等异常记为 503 以便按重试策略重试
+     */
+    static BulkResponseItem failedItem(BulkOperation operation, String defaultIndex, Throwable cause) {
+        BulkOperationBase base = (BulkOperationBase) operation._get();
+        int status;
+        ErrorCause error;
+        if (cause instanceof ElasticsearchException) {
+            ElasticsearchException e = (ElasticsearchException) cause;
+            status = e.status();
+            error = e.error();
+        } else {
+            status = cause instanceof ResponseException
+                    ? ((ResponseException) cause).getResponse().getStatusLine().getStatusCode()
+                    : 503;
+            error = ErrorCause.of(ec -> ec
+                    .type(cause.getClass().getSimpleName())
+                    .reason(String.valueOf(cause.getMessage())));
+        }
+        return BulkResponseItem.of(b -> b
+                .operationType(OperationType.valueOf(operation._kind().name()))
+                .index(base.index() != null ? base.index() : defaultIndex)
+                .id(base.id())
+                .status(status)
+                .error(error));
+    }
+
+    /**
+     * 获取索引的分片信息，查询失败时返回不可路由的结果，这部分操作仍会正常写入
+     */
+    private IndexRouting routing(String indicesName, long ttlMillis) {
+        IndexRouting routing = indices.get(indicesName);
+        long now = System.currentTimeMillis();
+        if (routing != null && now - routing.loadedAt < ttlMillis) {
+            return routing;
+        }
+        try {
+            routing = load(indicesName, now);
+        } catch (IOException | RuntimeException e) {
+            routing = IndexRouting.unrouted(indicesName, now);
+        }
+        indices.put(indicesName, routing);
+        return routing;
+    }
+
+    /**
+     * 从集群状态读取分片数、routing_num_shards 和主分片所在节点，别名指向多个索引时不可路由
+     */
+    private IndexRouting load(String indicesName, long now) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        params.put("flat_settings", "true");
+        params.put("filter_path", FILTER_PATH);
+        JsonNode root;
+        try {
+            root = util.performJson("GET", "/_cluster/state/metadata,routing_table/" + indicesName, params, null);
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == 404) {
+                return IndexRouting.unrouted(indicesName, now);
+            }
+            throw e;
+        }
+        JsonNode metadata = root.path("metadata").path("indices");
+        if (metadata.size() != 1) {
+            return IndexRouting.unrouted(indicesName, now);
+        }
+        Map.Entry<String, JsonNode> entry = metadata.fields().next();
+        String index = entry.getKey();
+        JsonNode settings = entry.getValue().path("settings");
+        int numberOfShards = settings.path("index.number_of_shards").asInt();
+        int routingNumShards = entry.getValue().path("routing_num_shards").asInt(numberOfShards);
+        int partitionSize = settings.path("index.routing_partition_size").asInt(1);
+        if (numberOfShards <= 0 || routingNumShards % numberOfShards != 0) {
+            return IndexRouting.unrouted(indicesName, now);
+        }
+        String[] primaryNodes = new String[numberOfShards];
+        Iterator<Map.Entry<String, JsonNode>> shards = root.path("routing_table").path("indices").path(index).path("shards").fields();
+        while (shards.hasNext()) {
+            Map.Entry<String, JsonNode> shard = shards.next();
+            int shardId = Integer.parseInt(shard.getKey());
+            for (JsonNode copy : shard.getValue()) {
+                if (copy.path("primary").asBoolean() && copy.hasNonNull("node") && shardId < numberOfShards) {
+                    primaryNodes[shardId] = copy.path("node").asText();
+                }
+            }
+        }
+        return new IndexRouting(index, numberOfShards, routingNumShards, partitionSize, primaryNodes, now);
+    }
+
+    /**
+     * 与 ES 的 Murmur3HashFunction 一致，对字符串的 UTF-16LE 字节计算 murmur3 x86 32 位哈希，seed 为 0
+     */
+    static int hash(String routing) {
+        byte[] bytes = new byte[routing.length() * 2];
+        for (int i = 0; i < routing.length(); i++) {
+            char c = routing.charAt(i);
+            bytes[i * 2] = (byte) c;
+            bytes[i * 2 + 1] = (byte) (c >>> 8);
+        }
+        return murmur3(bytes);
+    }
+
+    private static int murmur3(byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h1 = 0;
+        int roundedEnd = data.length & 0xfffffffc;
+        for (int i = 0; i < roundedEnd; i += 4) {
+            int k1 = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8) | ((data[i + 2] & 0xff) << 16) | (data[i + 3] << 24);
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+        int k1 = 0;
+        switch (data.length & 0x03) {
+            case 3:
+                k1 = (data[roundedEnd + 2] & 0xff) << 16;
+                // fall through
+            case 2:
+                k1 |= (data[roundedEnd + 1] & 0xff) << 8;
+                // fall through
+            case 1:
+                k1 |= data[roundedEnd] & 0xff;
+                k1 *= c1;
+                k1 = Integer.rotateLeft(k1, 15);
+                k1 *= c2;
+                h1 ^= k1;
+                break;
+            default:
+                break;
+        }
+        h1 ^= data.length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+
+    /**
+     * 索引的路由信息，numberOfShards 为 0 表示不可路由
+     */
+    static final class IndexRouting {
+
+        private final String index;
+
+        private final int numberOfShards;
+
+        private final int routingNumShards;
+
+        private final int partitionSize;
+
+        private final String[] primaryNodes;
+
+        private final long loadedAt;
+
+        IndexRouting(String index, int numberOfShards, int routingNumShards, int partitionSize, String[] primaryNodes, long loadedAt) {
+            this.index = index;
+            this.numberOfShards = numberOfShards;
+            this.routingNumShards = routingNumShards;
+            this.partitionSize = partitionSize;
+            this.primaryNodes = primaryNodes;
+            this.loadedAt = loadedAt;
+        }
+
+        static IndexRouting unrouted(String index, long loadedAt) {
+            return new IndexRouting(index, 0, 0, 1, new String[0], loadedAt);
+        }
+
+        /**
+         * 与 ES 的 OperationRouting 一致，有 routing 时按 routing 计算，routing_partition_size 大于 1 时再按 ID 偏移
+         *
+         * @return 分片号，不可路由时为 -1
+         */
+        int shardId(String id, String routing) {
+            if (numberOfShards == 0 || (id == null && (routing == null || partitionSize > 1))) {
+                return -1;
+            }
+            int hash;
+            if (routing == null) {
+                hash = hash(id);
+            } else {
+                hash = hash(routing);
+                if (partitionSize > 1) {
+                    hash += Math.floorMod(hash(id), partitionSize);
+                }
+            }
+            return Math.floorMod(hash, routingNumShards) / (routingNumShards / numberOfShards);
+        }
+
+    }
+
+}
@@ -0,0 +1,805 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.elasticsearch.client.ResponseException;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 本地写前日志，写入操作先追加到内存映射的 segment 文件，再由后台线程按写入顺序回放到 ES，
+ * 集群变慢或不可用时写入仍以本地磁盘速度完成，恢复后自动补写。
+ * <br/>
+ * 每条记录为一个 bulk 操作，格式为 [长度][CRC32][分组键][NDJSON 行]。回放按文档 ID 分到多个线程，
+ * 各线程分别记录已确认的位置并写入 checkpoint 文件，重启后从 checkpoint 继续回放，已确认的 segment 被删除。
+ * 进程在确认前崩溃时可能重复回放少量记录，指定了文档 ID 的 index、delete 重复执行结果不变。
+ * <pre>
+ * try (Spool spool = util.spool(c -&gt; c.directory("/data/es-spool"))) {
+ *     spool.index(INDEX_NAME, id, person);
+ * }
+ * </pre>
+ */
+public class Spool implements Closeable {
+
+    private static final int HEADER = 12;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+    private final ESUtil util;
+
+    private final SpoolConfig config;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final int maxSegments;
+
+    private final int lanes;
+
+    private final Map<Long, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    /**
+     * 保护写入位置、各回放线程的确认位置，并用于等待和唤醒
+     */
+    private final Object lock = new Object();
+
+    private final Object checkpointLock = new Object();
+
+    /**
+     * 各回放线程已确认的位置
+     */
+    private final long[] laneOffsets;
+
+    private final CRC32 crc = new CRC32();
+
+    private final AtomicLong roundRobin = new AtomicLong();
+
+    private final AtomicLong executionIds = new AtomicLong();
+
+    private final AtomicInteger corrupted = new AtomicInteger();
+
+    private final ExecutorService executor;
+
+    private MappedByteBuffer writeSegment;
+
+    private long writeSegmentIndex;
+
+    /**
+     * 已写入的位置，写入完整记录后才更新，回放线程只读取该位置之前的记录
+     */
+    private volatile long writeOffset;
+
+    private volatile boolean closed;
+
+    private volatile boolean stopped;
+
+    Spool(ESUtil util, SpoolConfig config) throws IOException {
+        if (config.getDirectory() == null) {
+            throw new IllegalArgumentException("spool 需要指定目录");
+        }
+        this.util = util;
+        this.config = config;
+        this.directory = Paths.get(config.getDirectory());
+        this.segmentBytes = config.getSegmentBytes();
+        this.maxSegments = (int) Math.max(2, config.getMaxBytes() / segmentBytes);
+        this.lanes = Math.max(1, config.getConcurrency());
+        Files.createDirectories(directory);
+        long[] saved = readCheckpoint();
+        this.laneOffsets = saved != null ? saved : new long[lanes];
+        recover(saved == null);
+        this.executor = Executors.newFixedThreadPool(lanes, BulkIngester.daemonThreadFactory("es-spool"));
+        for (int i = 0; i < lanes; i++) {
+            int lane = i;
+            executor.submit(() -> replay(lane));
+        }
+    }
+
+    /**
+     * 写入 index 操作，注册了索引模板时按写入时间写入滚动后的实际索引，写入时只计算索引名，索引在回放时按模板创建
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID，为 null 时由 ES 生成，重复回放会产生重复文档
+     * @param document    文档对象或原始 JSON（byte[]、ByteBuffer、String）
+     */
+    public void index(String indicesName, String id, Object document) throws IOException {
+        NdjsonBuffer record = NdjsonBuffer.local();
+        try {
+            record.appendIndex(util.writeIndexName(indicesName), id, util.rawJson(document));
+            append(record, laneKey(indicesName, id));
+        } finally {
+            record.release();
+        }
+    }
+
+    /**
+     * 写入 delete 操作
+     *
+     * @param indicesName 索引名
+     * @param id          文档 ID
+     */
+    public void delete(String indicesName, String id) throws IOException {
+        NdjsonBuffer record = NdjsonBuffer.local();
+        try {
+            record.appendDelete(indicesName, id);
+            append(record, laneKey(indicesName, id));
+        } finally {
+            record.release();
+        }
+    }
+
+    /**
+     * 写入局部更新，脚本更新在重复回放时会重复执行
+     *
+     * @param indicesName 索引名，局部更新中指定了索引名时以局部更新为准
+     * @param update      局部更新
+     */
+    public void update(String indicesName, PartialUpdate update) throws IOException {
+        NdjsonBuffer record = NdjsonBuffer.local();
+        try {
+            util.appendUpdate(record, indicesName, update);
+            append(record, laneKey(update.getIndex() != null ? update.getIndex() : indicesName, update.getId()));
+        } finally {
+            record.release();
+        }
+    }
+
+    /**
+     * 等待当前已写入的记录全部回放
+     *
+     * @param timeoutMillis 最长等待时间，单位毫秒
+     * @return 是否已全部回放
+     */
+    public boolean awaitReplayed(long timeoutMillis) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            long target = writeOffset;
+            while (minLaneOffset() < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || stopped) {
+                    return false;
+                }
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("等待 spool 回放时被中断", e);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return 尚未回放确认的字节数
+     */
+    public long pendingBytes() {
+        synchronized (lock) {
+            return writeOffset - minLaneOffset();
+        }
+    }
+
+    /**
+     * @return segment 文件占用的磁盘字节数，已确认的 segment 会立即解除映射并删除
+     */
+    public long diskBytes() {
+        synchronized (lock) {
+            return (writeSegmentIndex - minLaneOffset() / segmentBytes + 1) * segmentBytes;
+        }
+    }
+
+    /**
+     * @return 校验失败而跳过的记录数
+     */
+    public int corruptedRecords() {
+        return corrupted.get();
+    }
+
+    /**
+     * 停止写入，在 closeTimeoutMillis 内等待回放完成，未回放的记录保留在磁盘上
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            awaitReplayed(config.getCloseTimeoutMillis());
+        } finally {
+            synchronized (lock) {
+                stopped = true;
+                lock.notifyAll();
+            }
+            executor.shutdown();
+            boolean terminated = false;
+            try {
+                terminated = executor.awaitTermination(config.getRetryPolicy().getMaxBackoffMillis() + 1000, TimeUnit.MILLISECONDS);
+                if (!terminated) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            writeSegment.force();
+            writeCheckpoint();
+            if (terminated) {
+                // 回放线程仍在运行时不能解除映射，交给 GC 释放
+                segments.values().forEach(Spool::unmap);
+            }
+            segments.clear();
+        }
+    }
+
+    private void append(NdjsonBuffer record, int laneKey) throws IOException {
+        int length = record.size();
+        if (HEADER + length > segmentBytes) {
+            throw new IllegalArgumentException("单条记录 " + length + " 字节，超过 segment 大小 " + segmentBytes);
+        }
+        synchronized (lock) {
+            ensureOpen();
+            int position = (int) (writeOffset - writeSegmentIndex * segmentBytes);
+            if (position + HEADER + length > segmentBytes) {
+                awaitSpace();
+                writeSegment.force();
+                writeSegmentIndex++;
+                writeSegment = segment(writeSegmentIndex);
+                position = 0;
+            }
+            ByteBuffer target = writeSegment.duplicate();
+            target.position(position + HEADER);
+            record.copyTo(target);
+            crc.reset();
+            record.updateChecksum(crc);
+            target.putInt(position + 4, (int) crc.getValue());
+            target.putInt(position + 8, laneKey);
+            target.putInt(position, length);
+            if (config.isFsync()) {
+                writeSegment.force();
+            }
+            writeOffset = writeSegmentIndex * segmentBytes + position + HEADER + length;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 新建 segment 会超出磁盘上限时等待回放释放 segment，需持有 lock 调用
+     */
+    private void awaitSpace() throws IOException {
+        long deadline = System.currentTimeMillis() + config.getFullTimeoutMillis();
+        while (writeSegmentIndex + 2 - minLaneOffset() / segmentBytes > maxSegments) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new IOException("spool 已满，磁盘占用达到 " + config.getMaxBytes() + " 字节");
+            }
+            try {
+                lock.wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待 spool 空间时被中断", e);
+            }
+            ensureOpen();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Spool 已关闭");
+        }
+    }
+
+    /**
+     * 同一文档的操作分到同一个回放线程以保证顺序，自动生成 ID 的文档轮流分配
+     */
+    private int laneKey(String indicesName, String id) {
+        return id == null ? (int) roundRobin.getAndIncrement() : (indicesName + "/" + id).hashCode();
+    }
+
+    /**
+     * 回放线程，读取属于本线程的记录，按批提交，成功或条目不可重试后确认位置
+     */
+    private void replay(int lane) {
+        NdjsonBuffer buffer = NdjsonBuffer.local();
+        CRC32 checksum = new CRC32();
+        List<Record> batch = new ArrayList<>();
+        long offset;
+        synchronized (lock) {
+            offset = laneOffsets[lane];
+        }
+        while (!stopped) {
+            batch.clear();
+            long end = read(lane, offset, batch, checksum);
+            if (batch.isEmpty()) {
+                if (end > offset) {
+                    offset = end;
+                    commit(lane, offset);
+                    continue;
+                }
+                synchronized (lock) {
+                    if (writeOffset <= offset && !stopped) {
+                        try {
+                            lock.wait(100);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                continue;
+            }
+            if (!send(batch, buffer)) {
+                return;
+            }
+            offset = end;
+            commit(lane, offset);
+        }
+    }
+
+    /**
+     * 从 offset 开始读取属于 lane 的记录，直到达到单批上限或已写入的位置
+     *
+     * @return 已扫描到的位置
+     */
+    private long read(int lane, long offset, List<Record> batch, CRC32 checksum) {
+        long end = offset;
+        long limit = writeOffset;
+        long bytes = 0;
+        while (end < limit && batch.size() < config.getMaxActions() && bytes < config.getMaxBatchBytes()) {
+            long index = end / segmentBytes;
+            int position = (int) (end % segmentBytes);
+            if (position + HEADER > segmentBytes) {
+                end = (index + 1) * segmentBytes;
+                continue;
+            }
+            ByteBuffer segment = segment(index).duplicate();
+            int length = segment.getInt(position);
+            if (length <= 0 || position + HEADER + length > segmentBytes) {
+                // segment 剩余空间不足以写入下一条记录，记录从下一个 segment 开始
+                end = (index + 1) * segmentBytes;
+                continue;
+            }
+            int laneKey = segment.getInt(position + 8);
+            if (Math.floorMod(laneKey, lanes) == lane) {
+                segment.limit(position + HEADER + length);
+                segment.position(position + HEADER);
+                ByteBuffer payload = segment.slice();
+                checksum.reset();
+                checksum.update(payload.duplicate());
+                if ((int) checksum.getValue() == segment.getInt(position + 4)) {
+                    batch.add(new Record(payload, laneKey));
+                    bytes += length;
+                } else {
+                    corrupted.incrementAndGet();
+                }
+            }
+            end += HEADER + length;
+        }
+        return end;
+    }
+
+    /**
+     * 提交一批记录，集群不可用和可重试的条目按退避时间一直重试。
+     * 条目失败时同一文档在批内后续的操作可能已经执行，与失败条目一起按原顺序重新提交，保证同一文档按写入顺序生效。
+     * 请求整体被拒绝且状态码不可重试时放弃这批记录，413 时拆成两半分别提交，单条记录仍超限时放弃，失败均已通过 listener 回调
+     *
+     * @return 是否已处理完成，停止回放时返回 false
+     */
+    private boolean send(List<Record> batch, NdjsonBuffer buffer) {
+        BulkRetryPolicy retryPolicy = config.getRetryPolicy();
+        BulkListener listener = config.getListener();
+        List<Record> pending = batch;
+        Set<Integer> blocked = new HashSet<>();
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            buffer.reset();
+            for (Record record : pending) {
+                buffer.appendNdjson(record.payload, 1);
+            }
+            long executionId = executionIds.incrementAndGet();
+            int docs = pending.size();
+            long size = buffer.size();
+            if (listener != null) {
+                listener.beforeBulk(executionId, docs, size);
+            }
+            long start = System.currentTimeMillis();
+            List<Record> retry = new ArrayList<>();
+            try {
+                ensureIndices(pending);
+                BulkResponse response = util.bulkRaw(buffer);
+                int failures = 0;
+                blocked.clear();
+                List<BulkResponseItem> items = response.items();
+                for (int i = 0; i < items.size(); i++) {
+                    BulkResponseItem item = items.get(i);
+                    Record record = pending.get(i);
+                    if (item.error() != null) {
+                        failures++;
+                    }
+                    if (blocked.contains(record.laneKey)) {
+                        retry.add(record);
+                    } else if (item.error() != null && retryPolicy.isRetryable(item)) {
+                        retry.add(record);
+                        blocked.add(record.laneKey);
+                    }
+                }
+                if (listener != null) {
+                    listener.afterBulk(executionId, new BulkStats(executionId, docs, size, response.took(),
+                            System.currentTimeMillis() - start, failures), response);
+                }
+                if (retry.isEmpty()) {
+                    return true;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (listener != null) {
+                    listener.afterBulk(executionId, new BulkStats(executionId, docs, size, -1,
+                            System.currentTimeMillis() - start, docs), e);
+                }
+                int status = status(e);
+                if (status == 413 && pending.size() > 1) {
+                    int half = pending.size() / 2;
+                    return send(new ArrayList<>(pending.subList(0, half)), buffer)
+                            && send(new ArrayList<>(pending.subList(half, pending.size())), buffer);
+                }
+                if (status > 0 && !retryPolicy.isRetryable(status)) {
+                    // 请求本身不合法，重试不会成功，已通过 listener 回调
+                    return true;
+                }
+                retry = pending;
+            }
+            pending = retry;
+            if (!sleep(retryPolicy.backoffMillis(attempt))) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 注册了索引模板时，提交前按模板创建批内记录写入的实际索引，已确认存在的索引不产生请求
+     */
+    private void ensureIndices(List<Record> records) throws IOException {
+        if (!util.hasIndexTemplates()) {
+            return;
+        }
+        Set<String> indices = new HashSet<>();
+        for (Record record : records) {
+            String index = actionIndex(record.payload);
+            if (index != null && indices.add(index)) {
+                util.ensureWriteIndex(index);
+            }
+        }
+    }
+
+    /**
+     * 读取记录 action 行中的 _index
+     */
+    private static String actionIndex(ByteBuffer payload) throws IOException {
+        ByteBuffer line = payload.duplicate();
+        int end = line.position();
+        while (end < line.limit() && line.get(end) != '\n') {
+            end++;
+        }
+        byte[] bytes = new byte[end - line.position()];
+        line.get(bytes);
+        Iterator<JsonNode> actions = RawJson.MAPPER.readTree(bytes).elements();
+        return actions.hasNext() ? actions.next().path("_index").textValue() : null;
+    }
+
+    /**
+     * @return 请求整体失败时 ES 返回的状态码，连接失败等没有返回时为 0
+     */
+    private static int status(Exception e) {
+        if (e instanceof ResponseException) {
+            return ((ResponseException) e).getResponse().getStatusLine().getStatusCode();
+        }
+        if (e instanceof ElasticsearchException) {
+            return ((ElasticsearchException) e).status();
+        }
+        return 0;
+    }
+
+    /**
+     * @return 是否继续回放
+     */
+    private boolean sleep(long millis) {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + millis;
+            long remaining = millis;
+            while (!stopped && remaining > 0) {
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return !stopped;
+        }
+    }
+
+    /**
+     * 确认 lane 已回放到 offset，写入 checkpoint 并删除全部确认的 segment
+     */
+    private void commit(int lane, long offset) {
+        Map<Long, MappedByteBuffer> released = new HashMap<>();
+        synchronized (lock) {
+            laneOffsets[lane] = offset;
+            long minSegment = minLaneOffset() / segmentBytes;
+            for (Long index : segments.keySet()) {
+                if (index < minSegment && index != writeSegmentIndex) {
+                    released.put(index, segments.remove(index));
+                }
+            }
+            lock.notifyAll();
+        }
+        try {
+            writeCheckpoint();
+        } catch (IOException ignored) {
+            // 下一次确认时重新写入，checkpoint 落后只会导致重启后重复回放
+        }
+        for (Map.Entry<Long, MappedByteBuffer> entry : released.entrySet()) {
+            // 回放线程只读取各自确认位置之后的记录，已确认的 segment 不会再被访问，可以立即解除映射
+            unmap(entry.getValue());
+            try {
+                Files.deleteIfExists(segmentPath(entry.getKey()));
+            } catch (IOException ignored) {
+                // 解除映射失败时部分系统不允许删除，下次打开时按 checkpoint 清理
+            }
+        }
+    }
+
+    private long minLaneOffset() {
+        long min = Long.MAX_VALUE;
+        for (long offset : laneOffsets) {
+            min = Math.min(min, offset);
+        }
+        return min;
+    }
+
+    private void writeCheckpoint() throws IOException {
+        long[] offsets;
+        synchronized (lock) {
+            offsets = laneOffsets.clone();
+        }
+        ByteBuffer content = ByteBuffer.allocate(4 + offsets.length * 8);
+        content.putInt(offsets.length);
+        for (long offset : offsets) {
+            content.putLong(offset);
+        }
+        content.flip();
+        synchronized (checkpointLock) {
+            Path tmp = directory.resolve(CHECKPOINT + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                if (config.isFsync()) {
+                    // 先落盘再替换，否则断电后替换后的 checkpoint 可能为空
+                    channel.force(true);
+                }
+            }
+            Files.move(tmp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * 读取各回放线程的确认位置，回放并发数变化时全部从最小位置开始
+     *
+     * @return 确认位置，checkpoint 不存在或不完整（如未落盘时断电）时为 null
+     */
+    private long[] readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (InputStream is = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(is)) {
+            int count = in.readInt();
+            if (count < 0 || count > 4096) {
+                return null;
+            }
+            long[] saved = new long[count];
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                saved[i] = in.readLong();
+                min = Math.min(min, saved[i]);
+            }
+            if (count == lanes) {
+                return saved;
+            }
+            long[] offsets = new long[lanes];
+            Arrays.fill(offsets, count == 0 ? 0 : min);
+            return offsets;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 删除已确认的 segment，从最后一个 segment 中按长度和 CRC 找到最后一条完整记录作为写入位置，
+     * 其后可能是写了一半的记录，清零以免被当作记录读取
+     *
+     * @param noCheckpoint 没有可用的 checkpoint，从最早的 segment 开始回放
+     */
+    private void recover(boolean noCheckpoint) throws IOException {
+        List<Long> indices = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                indices.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        if (noCheckpoint && !indices.isEmpty()) {
+            Arrays.fill(laneOffsets, Collections.min(indices) * segmentBytes);
+        }
+        long minSegment = minLaneOffset() / segmentBytes;
+        long last = -1;
+        for (Long index : indices) {
+            if (index < minSegment) {
+                Files.deleteIfExists(segmentPath(index));
+            } else {
+                last = Math.max(last, index);
+            }
+        }
+        if (last < 0) {
+            writeSegmentIndex = minSegment;
+            writeSegment = segment(writeSegmentIndex);
+            writeOffset = minLaneOffset();
+            return;
+        }
+        writeSegmentIndex = last;
+        writeSegment = segment(last);
+        int position = 0;
+        CRC32 checksum = new CRC32();
+        while (position + HEADER <= segmentBytes) {
+            int length = writeSegment.getInt(position);
+            if (length <= 0 || position + HEADER + length > segmentBytes) {
+                break;
+            }
+            ByteBuffer payload = writeSegment.duplicate();
+            payload.limit(position + HEADER + length);
+            payload.position(position + HEADER);
+            checksum.reset();
+            checksum.update(payload);
+            if ((int) checksum.getValue() != writeSegment.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER + length;
+        }
+        ByteBuffer tail = writeSegment.duplicate();
+        tail.position(position);
+        byte[] zeros = new byte[Math.min(64 * 1024, segmentBytes)];
+        while (tail.hasRemaining()) {
+            tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+        }
+        writeOffset = Math.max(last * segmentBytes + position, minLaneOffset());
+        for (int i = 0; i < laneOffsets.length; i++) {
+            laneOffsets[i] = Math.min(laneOffsets[i], writeOffset);
+        }
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments.computeIfAbsent(index, i -> {
+            try (FileChannel channel = FileChannel.open(segmentPath(i),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * 立即解除内存映射，否则映射要等到 GC 才释放，期间已删除文件的磁盘空间不会回收，Windows 上文件也无法删除。
+     * 调用后不能再访问该映射
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (UNMAPPER != null) {
+            try {
+                UNMAPPER.accept(buffer);
+            } catch (RuntimeException ignored) {
+                // 交给 GC 释放
+            }
+        }
+    }
+
+    /**
+     * Java 9 及以上使用 Unsafe.invokeCleaner，Java 8 使用 DirectByteBuffer.cleaner().clean()，都不可用时为 null
+     */
+    private static Consumer<ByteBuffer> unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // Java 8
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object c = invoke(cleaner, buffer);
+                if (c != null) {
+                    invoke(clean, c);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static class Record {
+
+        private final ByteBuffer payload;
+
+        /**
+         * 分组键，同一文档的记录分组键相同
+         */
+        private final int laneKey;
+
+        private Record(ByteBuffer payload, int laneKey) {
+            this.payload = payload;
+            this.laneKey = laneKey;
+        }
+
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.wangrui027.utils;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 本地写前日志配置
+ */
+@Getter
+@Builder(toBuilder = true)
+public class SpoolConfig {
+
+    /**
+     * 日志目录，同一目录同时只能被一个 {@link Spool} 使用
+     */
+    private String directory;
+
+    /**
+     * 单个 segment 文件大小，单条记录不能超过该大小
+     */
+    @Builder.Default
+    private int segmentBytes = 64 * 1024 * 1024;
+
+    /**
+     * 磁盘占用上限，写满后写入阻塞直到回放释放出 segment，至少保留 2 个 segment
+     */
+    @Builder.Default
+    private long maxBytes = 1024L * 1024 * 1024;
+
+    /**
+     * 写满时的最长阻塞时间，单位毫秒，超时抛出 IOException
+     */
+    @Builder.Default
+    private long fullTimeoutMillis = 30_000;
+
+    /**
+     * 每次写入后是否强制刷盘，关闭时只保证进程崩溃不丢数据，断电可能丢失最近的写入
+     */
+    @Builder.Default
+    private boolean fsync = false;
+
+    /**
+     * 回放并发数，同一文档的操作总是由同一个回放线程按写入顺序提交
+     */
+    @Builder.Default
+    private int concurrency = 2;
+
+    /**
+     * 单个回放 bulk 请求的最大操作数
+     */
+    @Builder.Default
+    private int maxActions = 1000;
+
+    /**
+     * 单个回放 bulk 请求的最大字节数
+     */
+    @Builder.Default
+    private long maxBatchBytes = 5 * 1024 * 1024;
+
+    /**
+     * 回放重试的退避策略，集群不可用和可重试的条目会一直重试，只使用其中的退避时间和可重试状态码
+     */
+    @Builder.Default
+    private BulkRetryPolicy retryPolicy = BulkRetryPolicy.defaults();
+
+    /**
+     * 关闭时等待回放完成的最长时间，单位毫秒，未回放的记录在下次打开同一目录时继续回放
+     */
+    @Builder.Default
+    private long closeTimeoutMillis = 30_000;
+
+    /**
+     * 回放监听器，可以为 null，不可重试的失败条目和被 ES 整体拒绝的请求通过 afterBulk 回调后即视为已处理
+     */
+    private BulkListener listener;
+
+}
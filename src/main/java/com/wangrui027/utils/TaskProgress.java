@@ -0,0 +1,86 @@
+package com.wangrui027.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * reindex、delete_by_query、update_by_query 等服务端任务的进度，切片任务为各切片的汇总
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class TaskProgress {
+
+    /**
+     * 任务 ID，格式为 node:id，客户端执行时为 null
+     */
+    private final String taskId;
+
+    /**
+     * 任务是否已结束
+     */
+    private final boolean completed;
+
+    /**
+     * 需要处理的文档总数
+     */
+    private final long total;
+
+    /**
+     * 新建的文档数
+     */
+    private final long created;
+
+    /**
+     * 更新的文档数
+     */
+    private final long updated;
+
+    /**
+     * 删除的文档数
+     */
+    private final long deleted;
+
+    /**
+     * 版本冲突的文档数
+     */
+    private final long versionConflicts;
+
+    /**
+     * 未修改的文档数
+     */
+    private final long noops;
+
+    /**
+     * 已执行的批次数
+     */
+    private final long batches;
+
+    /**
+     * 任务被取消的原因，未取消时为 null
+     */
+    private final String canceled;
+
+    /**
+     * 失败原因，任务结束后才有值
+     */
+    private final List<String> failures;
+
+    /**
+     * @return 已处理的文档数
+     */
+    public long processed() {
+        return created + updated + deleted + versionConflicts + noops;
+    }
+
+    /**
+     * @return 是否存在失败的文档
+     */
+    public boolean hasFailures() {
+        return failures != null && !failures.isEmpty();
+    }
+
+}
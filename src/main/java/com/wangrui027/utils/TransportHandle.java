@@ -0,0 +1,34 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.transport.ElasticsearchTransport;
+import org.elasticsearch.client.sniff.Sniffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * transport 及其附属资源，关闭时先停止节点嗅探再关闭 transport
+ */
+class TransportHandle implements Closeable {
+
+    final ElasticsearchTransport transport;
+
+    private final Sniffer sniffer;
+
+    TransportHandle(ElasticsearchTransport transport, Sniffer sniffer) {
+        this.transport = transport;
+        this.sniffer = sniffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (sniffer != null) {
+                sniffer.close();
+            }
+        } finally {
+            transport.close();
+        }
+    }
+
+}
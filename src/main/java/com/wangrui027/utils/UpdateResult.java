@@ -0,0 +1,62 @@
+package com.wangrui027.utils;
+
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * 批量局部更新结果
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class UpdateResult {
+
+    /**
+     * 每个更新的返回条目，顺序与提交的更新一致，result 为 updated、created、noop 或 deleted
+     */
+    @ToString.Exclude
+    private final List<BulkResponseItem> items;
+
+    /**
+     * 已更新的文档数
+     */
+    private final int updated;
+
+    /**
+     * 通过 upsert 新建的文档数
+     */
+    private final int created;
+
+    /**
+     * 内容未变化而跳过的文档数
+     */
+    private final int noops;
+
+    /**
+     * 脚本中设置 ctx.op = 'delete' 删除的文档数
+     */
+    private final int deleted;
+
+    /**
+     * 失败的条目，如文档不存在且未指定 upsert、版本冲突超出重试次数、脚本错误
+     */
+    @ToString.Exclude
+    private final List<BulkResponseItem> failures;
+
+    /**
+     * ES 返回的 took，单位毫秒
+     */
+    private final long took;
+
+    /**
+     * @return 是否存在失败的条目
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+}
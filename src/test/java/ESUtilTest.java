@@ -1,20 +1,61 @@
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch.core.BulkResponse;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.wangrui027.utils.AdaptiveBulkConfig;
+import com.wangrui027.utils.BulkIngester;
+import com.wangrui027.utils.BulkListener;
+import com.wangrui027.utils.BulkLoadScope;
+import com.wangrui027.utils.BulkProgress;
+import com.wangrui027.utils.BulkResult;
+import com.wangrui027.utils.BulkRetryPolicy;
+import com.wangrui027.utils.BulkStats;
+import com.wangrui027.utils.DocumentCacheConfig;
 import com.wangrui027.utils.ESUtil;
+import com.wangrui027.utils.EsTask;
+import com.wangrui027.utils.IndexRollover;
+import com.wangrui027.utils.JsonpMappers;
+import com.wangrui027.utils.MicrometerEsMetrics;
+import com.wangrui027.utils.PartialUpdate;
+import com.wangrui027.utils.RawHit;
+import com.wangrui027.utils.RawSearchResponse;
+import com.wangrui027.utils.RequestBatcher;
+import com.wangrui027.utils.SearchCacheConfig;
+import com.wangrui027.utils.ShardBulkMode;
+import com.wangrui027.utils.Spool;
+import com.wangrui027.utils.TaskProgress;
+import com.wangrui027.utils.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import model.Person;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Slf4j
 public class ESUtilTest {
@@ -52,7 +93,9 @@ public class ESUtilTest {
             indicesDelete();
         }
         indicesCreateWithJson();
-        bulkSave();
+        try (BulkLoadScope ignored = util.bulkLoad(INDEX_NAME, o -> o.forceMerge(true))) {
+            bulkSave();
+        }
     }
 
     @Test
@@ -61,6 +104,221 @@ public class ESUtilTest {
         log.info("ping: " + ping);
     }
 
+    @Test
+    public void tunedTransport() throws IOException {
+        ESUtil tuned = ESUtil.of(e -> e
+                .hosts(ImmutableList.of("192.168.101.235:9201"))
+                .username("elastic")
+                .password("123456")
+                .maxConnTotal(400)
+                .maxConnPerRoute(100)
+                .ioThreadCount(4)
+                .socketTimeoutMillis(60_000)
+                .compression(true)
+        );
+        try {
+            log.info("tunedTransport ping: " + tuned.ping());
+        } finally {
+            tuned.close();
+        }
+    }
+
+    @Test
+    public void sharedTransport() throws Exception {
+        ESUtil first = ESUtil.of(e -> e
+                .ip("192.168.101.235")
+                .port(9201)
+                .username("elastic")
+                .password("123456")
+                .shareTransport(true)
+        );
+        ESUtil other = ESUtil.of(e -> e
+                .ip("192.168.101.235")
+                .port(9201)
+                .username("elastic")
+                .password("123456")
+                .shareTransport(true)
+        );
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ElasticsearchClient>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> other.getClient()));
+            }
+            for (Future<ElasticsearchClient> future : futures) {
+                Assertions.assertSame(other.getClient(), future.get());
+            }
+            Assertions.assertSame(first.getClient()._transport(), other.getClient()._transport());
+        } finally {
+            executor.shutdown();
+            first.close();
+            other.close();
+        }
+        Assertions.assertThrows(IllegalStateException.class, other::getClient);
+    }
+
+    @Test
+    public void customJsonpMapper() throws IOException {
+        ObjectMapper objectMapper = JsonpMappers.newObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        ESUtil custom = ESUtil.of(e -> e
+                .ip("192.168.101.235")
+                .port(9201)
+                .username("elastic")
+                .password("123456")
+                .indicesName(INDEX_NAME)
+                .jsonpMapper(new JacksonJsonpMapper(objectMapper))
+        );
+        try {
+            log.info("customJsonpMapper: " + custom.getById("11", Person.class));
+        } finally {
+            custom.close();
+        }
+    }
+
+    @Test
+    public void metrics() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ESUtil measured = ESUtil.of(e -> e
+                .ip("192.168.101.235")
+                .port(9201)
+                .username("elastic")
+                .password("123456")
+                .indicesName(INDEX_NAME)
+                .metrics(new MicrometerEsMetrics(registry))
+        );
+        try {
+            measured.getById("11", Person.class);
+            measured.count();
+            log.info("metrics: " + registry.getMetersAsString());
+        } finally {
+            measured.close();
+        }
+    }
+
+    @Test
+    public void documentCache() throws IOException {
+        ESUtil cached = ESUtil.of(e -> e
+                .ip("192.168.101.235")
+                .port(9201)
+                .username("elastic")
+                .password("123456")
+                .indicesName(INDEX_NAME)
+                .documentCache(DocumentCacheConfig.builder()
+                        .maxSize(5000)
+                        .ttlMillis(30_000)
+                        .build())
+        );
+        try {
+            Person first = cached.getById("11", Person.class);
+            Assertions.assertSame(first, cached.getById("11", Person.class));
+            cached.update("11", ImmutableMap.of("age", 18));
+            log.info("documentCache after update: " + cached.getById("11", Person.class));
+            log.info("documentCache stats: " + cached.getDocumentCacheStats());
+        } finally {
+            cached.close();
+        }
+    }
+
+    @Test
+    public void searchCache() throws IOException {
+        ESUtil cached = ESUtil.of(e -> e
+                .ip("192.168.101.235")
+                .port(9201)
+                .username("elastic")
+                .password("123456")
+                .indicesName(INDEX_NAME)
+                .searchCache(SearchCacheConfig.builder()
+                        .ttlMillis(2000)
+                        .build())
+        );
+        SearchRequest searchRequest = SearchRequest.of(sr -> sr
+                .index(INDEX_NAME)
+                .query(q -> q
+                        .term(t -> t
+                                .field("city")
+                                .value("武汉")
+                        )
+                )
+        );
+        try {
+            List<CompletableFuture<List<Person>>> futures = IntStream.range(0, 20)
+                    .mapToObj(i -> cached.searchAsync(searchRequest, Person.class))
+                    .collect(Collectors.toList());
+            for (CompletableFuture<List<Person>> future : futures) {
+                future.join();
+            }
+            List<Person> first = cached.search(searchRequest, Person.class);
+            Assertions.assertSame(first, cached.search(searchRequest, Person.class));
+            cached.refresh();
+            log.info("searchCache stats: " + cached.getSearchCacheStats());
+        } finally {
+            cached.close();
+        }
+    }
+
+    @Test
+    public void reindex() throws IOException {
+        String json = IOUtils.toString(Objects.requireNonNull(this.getClass().getResourceAsStream("/person.json")), StandardCharsets.UTF_8);
+        String dest = INDEX_NAME + "_v2";
+        if (util.indicesExist(dest)) {
+            util.indicesDelete(dest);
+        }
+        util.indicesCreateWithJson(dest, json);
+        TaskProgress progress = util.reindex(INDEX_NAME, dest, o -> o
+                .requestsPerSecond(5000)
+                .progress(p -> log.info("reindex progress: " + p.processed() + "/" + p.getTotal()))
+        );
+        log.info("reindex: " + progress);
+        String copy = INDEX_NAME + "_v3";
+        if (util.indicesExist(copy)) {
+            util.indicesDelete(copy);
+        }
+        util.indicesCreateWithJson(copy, json);
+        TaskProgress clientProgress = util.reindex(dest, copy, Person.class, person -> person.setCity(person.getCity() + "市"), o -> o
+                .slices(2)
+                .alias(INDEX_NAME + "_current")
+        );
+        log.info("client reindex: " + clientProgress);
+    }
+
+    @Test
+    public void indexTemplate() throws IOException {
+        String json = IOUtils.toString(Objects.requireNonNull(this.getClass().getResourceAsStream("/person.json")), StandardCharsets.UTF_8);
+        String name = INDEX_NAME + "_log";
+        util.registerIndexTemplate(t -> t
+                .name(name)
+                .body(json)
+                .rollover(IndexRollover.DAILY)
+        );
+        String id = util.save(name, new Person().setName("滚动").setAge(20).setCity("武汉"));
+        util.save(name, ImmutableList.of(new Person().setName("滚动2").setAge(21).setCity("武汉")));
+        String index = IndexRollover.DAILY.indexName(name, LocalDate.now());
+        Assertions.assertTrue(util.indicesExistCached(index));
+        Assertions.assertTrue(util.indicesExistCached(name));
+        log.info("indexTemplate: " + index + "/" + id + ", write index: " + util.resolveWriteIndex(name));
+        util.indicesDelete(index);
+    }
+
+    @Test
+    public void byQuery() throws IOException {
+        TaskProgress updated = util.updateByQuery(o -> o
+                .query(q -> q.term(t -> t.field("city").value("北京")))
+                .script("ctx._source.age += params.delta")
+                .scriptParams(ImmutableMap.of("delta", 1))
+                .proceedOnConflicts(true)
+                .progress(p -> log.info("updateByQuery progress: " + p.processed() + "/" + p.getTotal()))
+        );
+        log.info("updateByQuery: " + updated);
+        EsTask task = util.startDeleteByQuery(INDEX_NAME, o -> o
+                .query(q -> q.term(t -> t.field("city").value("上海")))
+                .requestsPerSecond(100)
+        );
+        task.rethrottle(-1);
+        TaskProgress deleted = task.await(500, null);
+        log.info("deleteByQuery: " + deleted);
+    }
+
     @Test
     public void indicesExist() throws IOException {
         boolean exist = util.indicesExist();
@@ -141,6 +399,99 @@ public class ESUtilTest {
         }
     }
 
+    @Test
+    public void bulkByShard() throws IOException {
+        List<BulkOperation> operations = IntStream.range(0, 200)
+                .mapToObj(i -> BulkOperation.of(bo -> bo.index(e -> e
+                        .index(INDEX_NAME)
+                        .id("shard-" + i)
+                        .document(new Person().setName("分片" + i).setAge(i % 60).setCity("武汉"))
+                )))
+                .collect(Collectors.toList());
+        BulkResponse response = util.bulkByShard(operations, e -> e.mode(ShardBulkMode.NODE));
+        Assertions.assertEquals(operations.size(), response.items().size());
+        Assertions.assertEquals("shard-10", response.items().get(10).id());
+        log.info("bulkByShard errors: " + response.errors() + ", took: " + response.took());
+        util.delete(operations.stream().map(o -> o.index().id()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void bulkSaveWithRetry() throws IOException {
+        List<Person> list = ImmutableList.of(
+                new Person().setName("张三").setAge(35).setCity("武汉"),
+                new Person().setName("李四").setAge(35).setCity("北京")
+        );
+        BulkResult result = util.save(list, ImmutableList.of("1", "2"), BulkRetryPolicy.builder()
+                .maxAttempts(3)
+                .initialBackoffMillis(200)
+                .build());
+        log.info("bulkSaveWithRetry: " + result);
+    }
+
+    @Test
+    public void saveRaw() throws IOException {
+        String _id = util.saveRaw(INDEX_NAME, "{\"name\":\"孙七\",\"age\":30,\"city\":\"深圳\"}", "raw-1");
+        log.info("raw doc id: " + _id);
+        BulkResponse response = util.saveRaw(ImmutableList.of(
+                "{\"name\":\"周八\",\"age\":31,\"city\":\"深圳\"}".getBytes(StandardCharsets.UTF_8),
+                ByteBuffer.wrap("{\"name\":\"吴九\",\"age\":32,\"city\":\"广州\"}".getBytes(StandardCharsets.UTF_8))
+        ), ImmutableList.of("raw-2", "raw-3"));
+        log.info("saveRaw errors: " + response.errors());
+    }
+
+    @Test
+    public void bulkIngester() {
+        try (BulkIngester<Person> ingester = util.bulkIngester(e -> e
+                .maxActions(500)
+                .maxConcurrentRequests(2)
+                .listener(new BulkListener() {
+                    @Override
+                    public void afterBulk(long executionId, BulkStats stats, BulkResponse response) {
+                        log.info("bulk: " + stats);
+                    }
+                }))) {
+            for (int i = 0; i < 2000; i++) {
+                ingester.add(new Person()
+                        .setId(String.valueOf(i))
+                        .setName("批量" + i)
+                        .setAge(i % 100)
+                        .setCity("武汉"), "bulk-" + i);
+            }
+        }
+    }
+
+    @Test
+    public void adaptiveBulkIngester() {
+        try (BulkIngester<Person> ingester = util.bulkIngester(e -> e
+                .maxActions(0)
+                .maxBytes(256 * 1024)
+                .adaptive(AdaptiveBulkConfig.builder()
+                        .minBytes(128 * 1024)
+                        .maxBytes(4 * 1024 * 1024)
+                        .maxConcurrentRequests(4)
+                        .build()))) {
+            for (int i = 0; i < 20000; i++) {
+                ingester.add(new Person()
+                        .setName("自适应" + i)
+                        .setAge(i % 100)
+                        .setCity("武汉"), "adaptive-" + i);
+            }
+            log.info("adaptive limits: " + ingester.getCurrentMaxBytes() + " bytes, " + ingester.getCurrentMaxConcurrentRequests() + " requests");
+        }
+    }
+
+    @Test
+    public void streamSave() {
+        Stream<Person> stream = IntStream.range(0, 10000).mapToObj(i -> new Person()
+                .setId("stream-" + i)
+                .setName("流式" + i)
+                .setAge(i % 100)
+                .setCity("北京"));
+        BulkProgress progress = util.save(INDEX_NAME, stream, Person::getId, e -> e.maxActions(1000),
+                p -> log.info("progress: " + p));
+        log.info("streamSave: " + progress);
+    }
+
     @Test
     public void getById() throws IOException {
         Person person = util.getById("11", Person.class);
@@ -160,6 +511,27 @@ public class ESUtilTest {
         log.info("update: " + result);
     }
 
+    @Test
+    public void bulkUpdate() throws IOException {
+        UpdateResult result = util.bulkUpdate(ImmutableList.of(
+                PartialUpdate.doc("1", ImmutableMap.of("city", "武汉")),
+                PartialUpdate.upsert("counter-1", "{\"name\":\"计数器\",\"age\":0}"),
+                PartialUpdate.of(u -> u
+                        .id("2")
+                        .script("ctx._source.age += params.n")
+                        .scriptParams(ImmutableMap.of("n", 1))
+                        .retryOnConflict(3)),
+                PartialUpdate.of(u -> u
+                        .id("counter-2")
+                        .script("ctx._source.age += params.n")
+                        .scriptParams(ImmutableMap.of("n", 1))
+                        .upsert(ImmutableMap.of("name", "计数器", "age", 1)))
+        ));
+        Assertions.assertFalse(result.hasFailures());
+        log.info("bulkUpdate: " + result);
+        util.delete(ImmutableList.of("counter-1", "counter-2"));
+    }
+
     @Test
     public void delete() throws IOException {
         boolean delete = util.delete("11");
@@ -176,6 +548,12 @@ public class ESUtilTest {
         }
     }
 
+    @Test
+    public void getByIds() throws IOException {
+        Map<String, Person> persons = util.getByIds(ImmutableList.of("1", "2", "3", "4", "404"), Person.class);
+        log.info("getByIds: " + persons);
+    }
+
     @Test
     public void search() throws IOException {
         SearchRequest searchRequest = SearchRequest.of(sr -> sr
@@ -191,4 +569,104 @@ public class ESUtilTest {
         log.info(list.toString());
     }
 
+    @Test
+    public void searchStream() {
+        try (Stream<Person> stream = util.searchStream(INDEX_NAME, sr -> sr
+                .query(q -> q
+                        .term(t -> t
+                                .field("city")
+                                .value("武汉")
+                        )
+                ), Person.class, o -> o.pageSize(500))) {
+            log.info("searchStream count: " + stream.count());
+        }
+    }
+
+    @Test
+    public void parallelScan() throws IOException {
+        AtomicLong ages = new AtomicLong();
+        long total = util.parallelScan(INDEX_NAME, sr -> sr, Person.class, o -> o.slices(4),
+                (slice, person) -> ages.addAndGet(person.getAge() == null ? 0 : person.getAge()));
+        log.info("parallelScan total: " + total + ", ages: " + ages.get());
+    }
+
+    @Test
+    public void async() {
+        CompletableFuture<Person> person = util.getByIdAsync("11", Person.class);
+        CompletableFuture<Long> count = util.countAsync();
+        CompletableFuture.allOf(person, count).join();
+        log.info("async person: " + person.join() + ", count: " + count.join());
+    }
+
+    @Test
+    public void requestBatcher() {
+        try (RequestBatcher batcher = util.requestBatcher(e -> e.windowMillis(10))) {
+            List<CompletableFuture<Person>> futures = IntStream.range(1, 5)
+                    .mapToObj(i -> batcher.getByIdAsync(INDEX_NAME, String.valueOf(i), Person.class))
+                    .collect(Collectors.toList());
+            futures.forEach(f -> log.info("requestBatcher: " + f.join()));
+        }
+    }
+
+    @Test
+    public void spool() throws IOException {
+        String directory = System.getProperty("java.io.tmpdir") + "/es_util_spool";
+        try (Spool spool = util.spool(c -> c
+                .directory(directory)
+                .segmentBytes(1024 * 1024)
+                .maxBytes(8 * 1024 * 1024))) {
+            for (int i = 0; i < 100; i++) {
+                spool.index(INDEX_NAME, "spool-" + i, new Person().setName("离线" + i).setAge(i % 60).setCity("武汉"));
+            }
+            spool.delete(INDEX_NAME, "spool-0");
+            Assertions.assertTrue(spool.awaitReplayed(30_000));
+            log.info("spool pending: " + spool.pendingBytes() + ", disk: " + spool.diskBytes());
+        }
+        util.delete(IntStream.range(1, 100).mapToObj(i -> "spool-" + i).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void spoolRejectedBatch() throws IOException {
+        String directory = System.getProperty("java.io.tmpdir") + "/es_util_spool_" + UUID.randomUUID();
+        AtomicLong rejected = new AtomicLong();
+        try (Spool spool = util.spool(c -> c
+                .directory(directory)
+                .segmentBytes(1024 * 1024)
+                .maxBytes(8 * 1024 * 1024)
+                .concurrency(1)
+                .listener(new BulkListener() {
+                    @Override
+                    public void afterBulk(long executionId, BulkStats stats, Throwable failure) {
+                        rejected.incrementAndGet();
+                    }
+                }))) {
+            // 文档 ID 超过 512 字节时整个 bulk 请求返回 400
+            StringBuilder id = new StringBuilder();
+            for (int i = 0; i < 600; i++) {
+                id.append('x');
+            }
+            spool.index(INDEX_NAME, id.toString(), new Person().setName("超长ID"));
+            Assertions.assertTrue(spool.awaitReplayed(30_000));
+            spool.index(INDEX_NAME, "spool-after-rejected", new Person().setName("被拒绝之后"));
+            Assertions.assertTrue(spool.awaitReplayed(30_000));
+        }
+        Assertions.assertEquals(1, rejected.get());
+        Assertions.assertNotNull(util.getById("spool-after-rejected", Person.class));
+        util.delete("spool-after-rejected");
+    }
+
+    @Test
+    public void searchRaw() throws IOException {
+        SearchRequest searchRequest = SearchRequest.of(sr -> sr
+                .index(INDEX_NAME)
+                .q("python")
+        );
+        RawSearchResponse response = util.searchRaw(searchRequest);
+        for (RawHit hit : response.getHits()) {
+            log.info(hit.getId() + " name: " + hit.field("name", String.class) + ", source: " + hit.sourceAsString());
+        }
+        List<Person> persons = util.searchProjection(searchRequest, Person.class);
+        log.info("searchProjection: " + persons);
+    }
+
 }
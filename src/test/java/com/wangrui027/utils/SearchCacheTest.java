@@ -0,0 +1,39 @@
+package com.wangrui027.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SearchCacheTest {
+
+    @Test
+    public void globalInvalidateDuringLoad() {
+        SearchCache cache = new SearchCache(SearchCacheConfig.builder()
+                .ttlMillis(60_000)
+                .refreshIntervalMillis(0)
+                .build());
+        List<String> indices = Collections.singletonList("es_util_person");
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<List<String>> pending = new CompletableFuture<>();
+        CompletableFuture<List<String>> first = cache.get("key", indices, () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        // 检索在途时失效全部结果，返回的是写入前的数据，不能被缓存
+        cache.invalidate(null);
+        pending.complete(Collections.singletonList("写入前"));
+        Assertions.assertEquals(Collections.singletonList("写入前"), first.join());
+        List<String> second = cache.get("key", indices, () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(Collections.singletonList("写入后"));
+        }).join();
+        Assertions.assertEquals(Collections.singletonList("写入后"), second);
+        Assertions.assertEquals(2, loads.get());
+        Assertions.assertEquals(2, cache.stats().getMissCount());
+    }
+
+}